@@ -1,11 +1,16 @@
 package edu.cmu.webgen;
 
+import edu.cmu.webgen.output.*;
 import edu.cmu.webgen.project.*;
 import edu.cmu.webgen.rendering.Renderer;
+import edu.cmu.webgen.rendering.ShardManifest;
 import edu.cmu.webgen.rendering.TemplateEngine;
 import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -25,8 +30,9 @@ public class CLI {
      * run the program with the provided options
      *
      * @param options parsed command-line arguments
+     * @return exit status of the program, 0 on success
      */
-    public void run(WebGenArgs options) {
+    public int run(WebGenArgs options) {
 
         if (options.isListArticles())
             printArticles(options.isListAll(), options.isListTopics(), options.getArticleSorting());
@@ -37,18 +43,134 @@ public class CLI {
         if (options.printSize())
             printSize();
 
-        if (options.isRender()) {
-            if (options.cleanTargetDirectory() && options.getTargetDirectory().exists()) {
+        if (options.getMergeShards() > 0)
+            return mergeShards(options) ? 0 : 1;
+
+        int status = 0;
+        if (options.isRender() && options.getZipFile() != null) {
+            status = renderZip(options);
+        } else if (options.isRender()) {
+            if (options.cleanTargetDirectory() && options.getShard() != null) {
+                System.err.println("Not cleaning the target directory, it is shared by all shards");
+            } else if (options.cleanTargetDirectory() && options.getTargetDirectory().exists()) {
                 cleanTargetDirectory(options.getTargetDirectory());
             }
             options.getTargetDirectory().mkdirs();
             try {
-                new Renderer(options.getTargetDirectory(), options.getArticleSorting(), new TemplateEngine())
-                        .renderProject(this.project);
+                TemplateEngine templateEngine = new TemplateEngine(options.isMinify(), options.isFingerprint());
+                OutputSink sink = new FileSystemSink(options.getTargetDirectory());
+                LinkCheckingSink linkChecker = createLinkChecker(options, sink);
+                Renderer renderer = new Renderer(linkChecker != null ? linkChecker : sink, options, templateEngine);
+                renderer.renderProject(this.project);
+                System.out.println("Files written: %d, unchanged: %d".formatted(
+                        templateEngine.getFilesWritten(), templateEngine.getFilesUnchanged()));
+                printMediaSummary(renderer);
+                if (linkChecker != null && !reportBrokenLinks(linkChecker))
+                    status = 1;
+                if (options.isMinify())
+                    System.out.println("Bytes saved by minification: %d".formatted(
+                            templateEngine.getBytesSavedByMinification()));
+                if (options.isGzip())
+                    precompress(options, renderer.getOutputPaths());
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
+        return status;
+    }
+
+    private static void printMediaSummary(Renderer renderer) {
+        MediaPublisher media = renderer.getMediaPublisher();
+        if (media != null)
+            System.out.println("Media files published: %d, unchanged: %d, duplicates: %d".formatted(
+                    media.getPublished(), media.getUnchanged(), media.getDuplicates()));
+    }
+
+    /**
+     * a sink checking the links of the generated pages, if requested; links are not checked in
+     * sharded builds, since each shard only generates part of the site
+     */
+    private @Nullable LinkCheckingSink createLinkChecker(WebGenArgs options, OutputSink sink) {
+        if (!options.isCheckLinks())
+            return null;
+        if (options.getShard() != null) {
+            System.err.println("Not checking links, each shard only generates part of the site");
+            return null;
+        }
+        return new LinkCheckingSink(sink);
+    }
+
+    /**
+     * @return true if no link is broken
+     */
+    private boolean reportBrokenLinks(LinkCheckingSink linkChecker) throws IOException {
+        List<LinkCheckingSink.BrokenLink> brokenLinks = linkChecker.check();
+        for (LinkCheckingSink.BrokenLink link : brokenLinks)
+            System.err.println("Broken link in %s: %s".formatted(link.page(), link.link()));
+        System.out.println("Links checked against %d files, broken: %d".formatted(
+                linkChecker.getTargetCount(), brokenLinks.size()));
+        return brokenLinks.isEmpty();
+    }
+
+    /**
+     * write .gz versions of the rendered files; each shard keeps its own manifest of compressed files
+     */
+    private void precompress(WebGenArgs options, List<String> outputPaths) throws IOException {
+        String manifestName = options.getShard() == null ? ".webgen-gzip.manifest" :
+                ".webgen-gzip-%d-of-%d.manifest".formatted(options.getShard().index(), options.getShard().count());
+        Precompressor precompressor = new Precompressor(options.getTargetDirectory(), manifestName,
+                Precompressor.DEFAULT_MIN_SIZE);
+        precompressor.compress(outputPaths);
+        System.out.println("Files compressed: %d, unchanged: %d".formatted(
+                precompressor.getCompressed(), precompressor.getUnchanged()));
+    }
+
+    /**
+     * render the site into a single zip archive
+     *
+     * @return exit status, 1 if links were checked and some are broken
+     */
+    private int renderZip(WebGenArgs options) {
+        if (options.isGzip())
+            System.err.println("Not precompressing files, --gzip only applies to the target directory");
+        File zipFile = options.getZipFile();
+        if (zipFile.getAbsoluteFile().getParentFile() != null)
+            zipFile.getAbsoluteFile().getParentFile().mkdirs();
+        try (ZipSink sink = new ZipSink(new BufferedOutputStream(new FileOutputStream(zipFile)))) {
+            TemplateEngine templateEngine = new TemplateEngine(options.isMinify(), options.isFingerprint());
+            LinkCheckingSink linkChecker = createLinkChecker(options, sink);
+            Renderer renderer = new Renderer(linkChecker != null ? linkChecker : sink, options, templateEngine);
+            renderer.renderProject(this.project);
+            System.out.println("Files written to %s: %d".formatted(zipFile, templateEngine.getFilesWritten()));
+            printMediaSummary(renderer);
+            if (linkChecker != null && !reportBrokenLinks(linkChecker))
+                return 1;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+
+    /**
+     * check that the manifests written by the shards of a sharded build cover every page exactly once
+     *
+     * @return true if the shards cover every page exactly once
+     */
+    private boolean mergeShards(WebGenArgs options) {
+        try {
+            Set<String> allPages = new Renderer(options.getTargetDirectory(), options, new TemplateEngine())
+                    .planPages(this.project);
+            List<String> problems = ShardManifest.merge(options.getTargetDirectory(), options.getMergeShards(), allPages);
+            if (problems.isEmpty()) {
+                System.out.println("Shards cover all %d pages".formatted(allPages.size()));
+                return true;
+            }
+            problems.forEach(System.err::println);
+            System.err.println("Sharded build incomplete: %d problems".formatted(problems.size()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
     }
 
     /**
@@ -1,13 +1,20 @@
 package edu.cmu.webgen;
 
-import com.github.jknack.handlebars.internal.text.StringEscapeUtils;
 import com.joestelmach.natty.Parser;
 import edu.cmu.webgen.parser.ProjectParser;
 import edu.cmu.webgen.project.*;
+import edu.cmu.webgen.rendering.HtmlEscaper;
+import edu.cmu.webgen.rendering.HtmlSink;
+import edu.cmu.webgen.server.LoadGenerator;
+import edu.cmu.webgen.server.PreviewServer;
+import edu.cmu.webgen.server.StaticFileServer;
 
-import java.io.StringWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.file.attribute.FileTime;
 import java.text.ParseException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -24,17 +31,56 @@ public class WebGen {
     public static void main(String[] args) {
         try {
             WebGenArgs options = new WebGenArgs(args);
+            File staticDirectory = options.getStaticDirectory();
+            if (staticDirectory != null && !options.isHelp()) {
+                serveStatic(staticDirectory, options.getPort(), options.getLoadTestSeconds());
+                return;
+            }
             if (!options.projectSourceDirectoryExists() || options.isHelp()) {
                 options.printHelp();
                 return;
             }
-            Project project = new ProjectParser().loadProject(options.getProjectSourceDirectory());
-            new CLI(project).run(options);
+            if (options.isServe()) {
+                new PreviewServer(options).start(options.getPort());
+                return;
+            }
+            Project project = new ProjectParser(options.isStreaming(), options.isReproducible())
+                    .loadProject(options.getProjectSourceDirectory());
+            int status = new CLI(project).run(options);
+            // a failed check, such as an incomplete sharded build, must fail the build that runs webgen
+            if (status != 0)
+                System.exit(status);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * serve a generated site, optionally measuring the throughput of the server and stopping it
+     *
+     * @param directory       directory of the site
+     * @param port            port of the server
+     * @param loadTestSeconds duration of the load test, 0 to serve until the process is stopped
+     * @throws IOException if the server cannot be started or does not answer the load test
+     */
+    private static void serveStatic(File directory, int port, int loadTestSeconds) throws IOException {
+        StaticFileServer server = new StaticFileServer(directory);
+        port = server.start(port);
+        if (loadTestSeconds == 0) {
+            System.out.println("Serving %s at http://localhost:%d/".formatted(directory, port));
+            return;
+        }
+        List<String> paths = LoadGenerator.getPageMix(directory);
+        System.out.println("Requesting %d files of %s over %d connections for %d s".formatted(
+                paths.size(), directory, LoadGenerator.DEFAULT_CONNECTIONS, loadTestSeconds));
+        try {
+            System.out.println(new LoadGenerator(new InetSocketAddress("localhost", port), paths)
+                    .run(LoadGenerator.DEFAULT_CONNECTIONS, Duration.ofSeconds(loadTestSeconds)));
+        } finally {
+            server.stop();
+        }
+    }
+
     /**
      * using external library to flexibly parse dates
      * <p>
@@ -62,6 +108,13 @@ public class WebGen {
         return formatter.format(date.atZone(ZoneId.systemDefault()));
     }
 
+    /**
+     * forget the ids assigned so far, so that a project loaded again gets the same ids
+     */
+    public static void resetIds() {
+        idCounter.clear();
+    }
+
     public static String genId(String title) {
         String id = title.toLowerCase().replaceAll("[^a-z0-9]", "_");
         if (idCounter.containsKey(id)) {
@@ -95,6 +148,31 @@ public class WebGen {
         return result;
     }
 
+    /**
+     * helper function to paginate content anchored at the oldest end
+     * <p>
+     * pages are filled starting with the oldest content, so only the newest page is partially
+     * filled; adding newer content only changes the newest page (or starts a new one) while
+     * all older pages keep their content
+     *
+     * @param contentOldestFirst content ordered from oldest to newest
+     * @param pageSize           number of elements per page
+     * @param <R>                type of the content
+     * @return list of lists of content, starting with the newest page, each page listing its newest
+     * content first
+     */
+    public static <R> List<List<R>> paginateContentAnchored(List<R> contentOldestFirst, int pageSize) {
+        int pageCount = Math.max(1, (contentOldestFirst.size() + pageSize - 1) / pageSize);
+        List<List<R>> result = new ArrayList<>(pageCount);
+        for (int page = pageCount - 1; page >= 0; page--) {
+            int end = Math.min((page + 1) * pageSize, contentOldestFirst.size());
+            List<R> pageContent = new ArrayList<>(contentOldestFirst.subList(page * pageSize, end));
+            Collections.reverse(pageContent);
+            result.add(pageContent);
+        }
+        return result;
+    }
+
     /**
      * helper functions to convert FileTime into LocalDateTime
      *
@@ -105,7 +183,7 @@ public class WebGen {
         return LocalDateTime.ofInstant(fileTime.toInstant(), ZoneId.systemDefault());
     }
 
-    public int previewText(FormattedTextDocument.FormattedTextContent content, StringWriter w, int maxLength) {
+    public int previewText(FormattedTextDocument.FormattedTextContent content, HtmlSink w, int maxLength) {
         if (content instanceof FormattedTextDocument.TextFragmentSequence node) {
             for (FormattedTextDocument.TextFragment t : node.getFragments()) {
                 if (maxLength > 0) {
@@ -149,11 +227,11 @@ public class WebGen {
         }
         if (content instanceof FormattedTextDocument.PlainTextFragment node) {
             if (node.text().length() > maxLength) {
-                w.write(StringEscapeUtils.escapeHtml4(node.text().substring(0, maxLength)));
+                HtmlEscaper.escape(node.text(), 0, maxLength, w);
                 w.write("...");
                 return 0;
             }
-            w.write(StringEscapeUtils.escapeHtml4(node.text()));
+            HtmlEscaper.escape(node.text(), w);
             return maxLength - node.text().length();
         }
         if (content instanceof FormattedTextDocument.InlineImage node) {
@@ -1,7 +1,10 @@
 package edu.cmu.webgen;
 
+import edu.cmu.webgen.output.ImageDerivatives;
+import edu.cmu.webgen.rendering.FeedWriter;
 import org.apache.commons.cli.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 
@@ -10,9 +13,16 @@ import java.io.File;
  */
 public class WebGenArgs {
 
+    public static final int DEFAULT_PORT = 8080;
+
     final CommandLine cmd;
     private final Options options;
     private final OptionGroup sortingOptions;
+    private final @Nullable Shard shard;
+    private final int mergeShards;
+    private final int feedSize;
+    private final int port;
+    private final int loadTestSeconds;
 
     public WebGenArgs(String[] arguments) throws ParseException {
         this.options = new Options();
@@ -31,9 +41,107 @@ public class WebGenArgs {
         this.options.addOption("c", "clean", false, "clean target directory before generating new page");
         this.options.addOption("s", "size", false, "print the size of the entire project");
         this.options.addOption("t", "topics", false, "print topics of articles or events");
+        this.options.addOption(Option.builder().longOpt("reproducible").desc("show the last update of each page's content instead of the generation time, so that identical input gives identical output").build());
+        this.options.addOption(Option.builder().longOpt("anchored-pagination").desc("number list pages from the oldest article, so that new articles only change the newest page").build());
+        this.options.addOption(Option.builder().longOpt("streaming").desc("keep only titles and previews of documents in memory and read each document again when rendering its page, for very large projects").build());
+        this.options.addOption(Option.builder().longOpt("shard").hasArg().argName("i/N").desc("render only the pages of shard i of N (0 <= i < N) and write a manifest of the rendered pages").build());
+        this.options.addOption(Option.builder().longOpt("zip").hasArg().argName("file").desc("write the site into a single zip archive instead of the target directory").build());
+        this.options.addOption(Option.builder().longOpt("minify").desc("remove redundant whitespace and comments from the generated pages").build());
+        this.options.addOption(Option.builder().longOpt("fingerprint").desc("publish assets under names containing a hash of their content and write assets-manifest.json").build());
+        this.options.addOption(Option.builder().longOpt("critical-css").desc("inline the style rules each kind of page uses and load the full stylesheet asynchronously").build());
+        this.options.addOption(Option.builder().longOpt("responsive-images").desc("create smaller versions of images and offer them with srcset").build());
+        this.options.addOption(Option.builder().longOpt("cache-dir").hasArg().argName("dir").desc("directory caching hashes of media files and generated image versions between builds (default: " + ImageDerivatives.DEFAULT_CACHE_DIRECTORY + ")").build());
+        this.options.addOption(Option.builder().longOpt("youtube-facade").desc("show YouTube videos as a thumbnail that loads the player only when clicked").build());
+        this.options.addOption(Option.builder().longOpt("site-url").hasArg().argName("url").desc("absolute URL of the published site, such as https://example.org; writes sitemap.xml").build());
+        this.options.addOption(Option.builder().longOpt("feeds").desc("write Atom feeds of the most recent articles of the site and of each topic (requires --site-url)").build());
+        this.options.addOption(Option.builder().longOpt("feed-size").hasArg().argName("N").desc("number of articles in each feed (default: " + FeedWriter.DEFAULT_FEED_SIZE + ")").build());
+        this.options.addOption(Option.builder().longOpt("offline").desc("write a service worker that keeps the homepage, the stylesheet and the newest articles available offline (requires --reproducible, so that unchanged pages keep their revision)").build());
+        this.options.addOption(Option.builder().longOpt("check-links").desc("report links of the generated pages whose targets were not generated, exit with status 1 if there are any").build());
+        this.options.addOption(Option.builder().longOpt("gzip").desc("write precompressed .gz versions of pages and stylesheets next to them").build());
+        this.options.addOption(Option.builder().longOpt("merge-shards").hasArg().argName("N").desc("check that the manifests of N shards together cover every page exactly once and merge them").build());
+        this.options.addOption(Option.builder().longOpt("serve").desc("preview the project in a local web server, rendering pages on demand and reloading the project when it changes (see --port)").build());
+        this.options.addOption(Option.builder().longOpt("serve-static").hasArg().argName("dir").desc("serve a generated site from the given directory, with ETags and precompressed .gz files (see --gzip and --port)").build());
+        this.options.addOption(Option.builder().longOpt("port").hasArg().argName("port").desc("port of the server for --serve and --serve-static (default: " + DEFAULT_PORT + ")").build());
+        this.options.addOption(Option.builder().longOpt("load-test").hasArg().argName("seconds").desc("measure how many requests per second the server for --serve-static answers for the pages of the site, then stop").build());
         this.options.addOption("h", "help", false, "print this help message");
         DefaultParser parser = new DefaultParser();
         this.cmd = parser.parse(this.options, arguments);
+        this.shard = this.cmd.hasOption("shard") ? parseShard(this.cmd.getOptionValue("shard")) : null;
+        this.mergeShards = this.cmd.hasOption("merge-shards") ? parseShardCount(this.cmd.getOptionValue("merge-shards")) : 0;
+        this.feedSize = this.cmd.hasOption("feeds") ? parseFeedSize(this.cmd.getOptionValue("feed-size")) : 0;
+        if (this.feedSize > 0 && !this.cmd.hasOption("site-url"))
+            throw new ParseException("Feeds require the URL of the site, see --site-url");
+        this.port = parsePort(this.cmd.getOptionValue("port"), DEFAULT_PORT);
+        if (this.cmd.hasOption("serve") && this.cmd.hasOption("serve-static"))
+            throw new ParseException("Either preview the project with --serve or serve a generated site with --serve-static");
+        this.loadTestSeconds = this.cmd.hasOption("load-test") ? parseSeconds(this.cmd.getOptionValue("load-test")) : 0;
+        if (this.cmd.hasOption("serve-static") && !getStaticDirectory().isDirectory())
+            throw new ParseException("Cannot serve \"%s\", not a directory".formatted(this.cmd.getOptionValue("serve-static")));
+        if (this.loadTestSeconds > 0 && !this.cmd.hasOption("serve-static"))
+            throw new ParseException("The load test requires a site to serve, see --serve-static");
+        if (this.shard != null && this.cmd.hasOption("offline"))
+            throw new ParseException("The service worker cannot be written by sharded builds");
+        if (this.cmd.hasOption("offline") && !this.cmd.hasOption("reproducible"))
+            throw new ParseException("The service worker requires pages that only change with their content, see --reproducible");
+    }
+
+    private static Shard parseShard(String value) throws ParseException {
+        String[] parts = value.split("/");
+        if (parts.length != 2)
+            throw new ParseException("Invalid shard \"%s\", expected i/N".formatted(value));
+        int count = parseShardCount(parts[1]);
+        try {
+            int index = Integer.parseInt(parts[0].trim());
+            if (index < 0 || index >= count)
+                throw new ParseException("Invalid shard \"%s\", index must be between 0 and %d".formatted(value, count - 1));
+            return new Shard(index, count);
+        } catch (NumberFormatException e) {
+            throw new ParseException("Invalid shard \"%s\", expected i/N".formatted(value));
+        }
+    }
+
+    private static int parseShardCount(String value) throws ParseException {
+        try {
+            int count = Integer.parseInt(value.trim());
+            if (count > 0) return count;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ParseException("Invalid number of shards \"%s\"".formatted(value));
+    }
+
+    private static int parseFeedSize(@Nullable String value) throws ParseException {
+        if (value == null)
+            return FeedWriter.DEFAULT_FEED_SIZE;
+        try {
+            int size = Integer.parseInt(value.trim());
+            if (size > 0) return size;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ParseException("Invalid feed size \"%s\"".formatted(value));
+    }
+
+    private static int parsePort(@Nullable String value, int defaultPort) throws ParseException {
+        if (value == null)
+            return defaultPort;
+        try {
+            int port = Integer.parseInt(value.trim());
+            if (port > 0 && port < 65536) return port;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ParseException("Invalid port \"%s\"".formatted(value));
+    }
+
+    private static int parseSeconds(String value) throws ParseException {
+        try {
+            int seconds = Integer.parseInt(value.trim());
+            if (seconds > 0) return seconds;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ParseException("Invalid number of seconds \"%s\"".formatted(value));
     }
 
     void printHelp() {
@@ -93,5 +201,153 @@ public class WebGenArgs {
         return this.cmd.hasOption("size");
     }
 
+    public boolean isReproducible() {
+        return this.cmd.hasOption("reproducible");
+    }
+
+    public boolean isAnchoredPagination() {
+        return this.cmd.hasOption("anchored-pagination");
+    }
+
+    public boolean isStreaming() {
+        return this.cmd.hasOption("streaming");
+    }
+
+    /**
+     * the shard to render, if only part of the site should be rendered
+     *
+     * @return the shard or null to render all pages
+     */
+    public @Nullable Shard getShard() {
+        return this.shard;
+    }
+
+    /**
+     * number of shards whose manifests should be merged
+     *
+     * @return number of shards, 0 if no merge is requested
+     */
+    public int getMergeShards() {
+        return this.mergeShards;
+    }
+
+    public boolean isMinify() {
+        return this.cmd.hasOption("minify");
+    }
+
+    public boolean isFingerprint() {
+        return this.cmd.hasOption("fingerprint");
+    }
+
+    public boolean isInlineCriticalCss() {
+        return this.cmd.hasOption("critical-css");
+    }
+
+    /**
+     * directory caching hashes of media files and smaller versions of images between builds; it is
+     * never part of the generated site
+     *
+     * @return the directory
+     */
+    public File getCacheDirectory() {
+        return new File(this.cmd.hasOption("cache-dir") ? this.cmd.getOptionValue("cache-dir") :
+                ImageDerivatives.DEFAULT_CACHE_DIRECTORY);
+    }
+
+    public boolean isResponsiveImages() {
+        return this.cmd.hasOption("responsive-images");
+    }
+
+    public boolean isYoutubeFacade() {
+        return this.cmd.hasOption("youtube-facade");
+    }
+
+    /**
+     * absolute URL under which the site is published
+     *
+     * @return the URL or null if it is not known
+     */
+    public @Nullable String getSiteUrl() {
+        return this.cmd.getOptionValue("site-url");
+    }
+
+    /**
+     * number of entries of the Atom feeds
+     *
+     * @return number of entries, 0 if no feeds should be written
+     */
+    public int getFeedSize() {
+        return this.feedSize;
+    }
+
+    /**
+     * whether to preview the project in a local web server instead of rendering it
+     */
+    public boolean isServe() {
+        return this.cmd.hasOption("serve");
+    }
+
+    /**
+     * directory of a generated site to serve as it is
+     *
+     * @return the directory, null if no site should be served
+     */
+    public @Nullable File getStaticDirectory() {
+        return this.cmd.hasOption("serve-static") ? new File(this.cmd.getOptionValue("serve-static")) : null;
+    }
+
+    /**
+     * port of the preview server and of the server for a generated site
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * duration of the load test of the server for a generated site
+     *
+     * @return duration in seconds, 0 if the site should be served without a load test
+     */
+    public int getLoadTestSeconds() {
+        return this.loadTestSeconds;
+    }
+
+    public boolean isOffline() {
+        return this.cmd.hasOption("offline");
+    }
+
+    public boolean isCheckLinks() {
+        return this.cmd.hasOption("check-links");
+    }
+
+    public boolean isGzip() {
+        return this.cmd.hasOption("gzip");
+    }
+
+    /**
+     * archive into which the site is written instead of the target directory
+     *
+     * @return the zip file or null to write into the target directory
+     */
+    public @Nullable File getZipFile() {
+        return this.cmd.hasOption("zip") ? new File(this.cmd.getOptionValue("zip")) : null;
+    }
+
     public enum ArticleSorting {PINNED, PUBLISHED_LAST, PUBLISHED_FIRST, EDITED}
+
+    /**
+     * one of count shards of a site; a page belongs to the shard selected by the hash of its path
+     */
+    public record Shard(int index, int count) {
+        public boolean contains(String pagePath) {
+            return Math.floorMod(pagePath.hashCode(), this.count) == this.index;
+        }
+
+        @Override
+        public String toString() {
+            return this.index + "/" + this.count;
+        }
+    }
 }
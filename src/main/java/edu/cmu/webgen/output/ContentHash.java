@@ -0,0 +1,76 @@
+package edu.cmu.webgen.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 hashes of content as hex strings, for published names, ETags and the manifests that
+ * detect unchanged files. Callers shorten the hash where a prefix is unique enough.
+ */
+public final class ContentHash {
+
+    private static final int FILE_BUFFER_SIZE = 256 * 1024;
+
+    private ContentHash() {
+    }
+
+    /**
+     * a new digest, for content that is hashed in parts
+     *
+     * @return a SHA-256 digest
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+
+    /**
+     * the hash of a digest, which is reset
+     *
+     * @param digest a digest from {@link #newDigest}
+     * @return the hash as lower-case hex string
+     */
+    public static String toHex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * the hash of some content
+     *
+     * @param content the content
+     * @return the hash as lower-case hex string
+     */
+    public static String of(byte[] content) {
+        return HexFormat.of().formatHex(newDigest().digest(content));
+    }
+
+    /**
+     * the hash of the content of a file, which is read in pieces
+     *
+     * @param file the file
+     * @return the hash as lower-case hex string
+     * @throws IOException if the file cannot be read
+     */
+    public static String of(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(FILE_BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toHex(digest);
+    }
+}
@@ -0,0 +1,161 @@
+package edu.cmu.webgen.output;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes the site as files into a target directory.
+ * <p>
+ * Files are only written if their content changes, which keeps the modification time of
+ * unchanged files, so that synchronization tools only upload files that actually changed.
+ */
+public class FileSystemSink implements OutputSink {
+
+    private final File root;
+    private final Set<File> knownDirectories = new HashSet<>();
+
+    public FileSystemSink(File root) {
+        this.root = root;
+    }
+
+    @Override
+    public File getRoot() {
+        return this.root;
+    }
+
+    /**
+     * the file in the target directory for a path of the site
+     *
+     * @param path path relative to the root of the site
+     * @return the file
+     */
+    public File getFile(String path) {
+        return new File(this.root, path);
+    }
+
+    @Override
+    public void createDirectories(Collection<String> directories) {
+        for (String dir : directories)
+            createDirectory(getFile(dir));
+    }
+
+    private void createDirectory(File dir) {
+        if (this.knownDirectories.contains(dir))
+            return;
+        dir.mkdirs();
+        // all parents exist now as well
+        File d = dir;
+        while (d != null && this.knownDirectories.add(d))
+            d = d.getParentFile();
+    }
+
+    /**
+     * write content into a file unless the file already has exactly this content; the chunks
+     * are written with a single gathering write
+     */
+    @Override
+    public boolean write(String path, ByteBuffer... chunks) throws IOException {
+        File targetFile = getFile(path);
+        ByteBuffer[] content = new ByteBuffer[chunks.length];
+        long length = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            content[i] = chunks[i].duplicate();
+            length += content[i].remaining();
+        }
+        if (hasContent(targetFile, length, content))
+            return false;
+        createDirectory(targetFile.getParentFile());
+        try (FileChannel channel = FileChannel.open(targetFile.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (length > 0)
+                length -= channel.write(content);
+        }
+        return true;
+    }
+
+    /**
+     * stream the content into a file next to the target and move it, so that the target is never
+     * partially written
+     */
+    @Override
+    public void stream(String path, StreamContent content) throws IOException {
+        File targetFile = getFile(path);
+        createDirectory(targetFile.getParentFile());
+        File temp = new File(targetFile.getParentFile(), targetFile.getName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024)) {
+            content.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        Files.move(temp.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * publish a file whose name identifies its content (such as a content hash), so an existing
+     * target of the same size is assumed to be identical and kept
+     * <p>
+     * the file is published as hard link to the source where possible, otherwise it is copied
+     * with {@link FileChannel#transferTo}; as a hard link shares the content with its source,
+     * sources must not be modified in place after publishing
+     */
+    @Override
+    public boolean publish(String path, File source) throws IOException {
+        File targetFile = getFile(path);
+        if (targetFile.isFile() && targetFile.length() == source.length())
+            return false;
+        createDirectory(targetFile.getParentFile());
+        Files.deleteIfExists(targetFile.toPath());
+        try {
+            Files.createLink(targetFile.toPath(), source.toPath());
+            return true;
+        } catch (UnsupportedOperationException | IOException e) {
+            // file systems without hard links, or source and target on different devices
+        }
+        // copied next to the target and moved, so that the target is never partially written
+        File temp = new File(targetFile.getParentFile(), targetFile.getName() + ".tmp");
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(temp.toPath(),
+                     StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; )
+                pos += in.transferTo(pos, size - pos, out);
+        }
+        Files.move(temp.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /**
+     * remove a file together with its precompressed version, see {@link Precompressor}
+     */
+    @Override
+    public boolean delete(String path) throws IOException {
+        Files.deleteIfExists(getFile(path + Precompressor.GZIP_SUFFIX).toPath());
+        return Files.deleteIfExists(getFile(path).toPath());
+    }
+
+    private static boolean hasContent(File file, long length, ByteBuffer[] content) throws IOException {
+        // comparing the length first avoids reading most files that changed
+        if (!file.isFile() || file.length() != length)
+            return false;
+        byte[] existing = Files.readAllBytes(file.toPath());
+        int offset = 0;
+        for (ByteBuffer chunk : content) {
+            if (!ByteBuffer.wrap(existing, offset, chunk.remaining()).equals(chunk))
+                return false;
+            offset += chunk.remaining();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+package edu.cmu.webgen.output;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sink that records a hash of the content of every file written through it and passes the
+ * files on to another sink. The hashes identify revisions of files, for example for the
+ * precache manifest of the service worker.
+ */
+public class HashingSink implements OutputSink {
+
+    private static final int HASH_LENGTH = 16;
+
+    private final OutputSink delegate;
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate receives all files
+     */
+    public HashingSink(OutputSink delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean write(String path, ByteBuffer... chunks) throws IOException {
+        MessageDigest digest = ContentHash.newDigest();
+        for (ByteBuffer chunk : chunks)
+            digest.update(chunk.duplicate());
+        this.hashes.put(path, ContentHash.toHex(digest).substring(0, HASH_LENGTH));
+        return this.delegate.write(path, chunks);
+    }
+
+    @Override
+    public void stream(String path, StreamContent content) throws IOException {
+        MessageDigest digest = ContentHash.newDigest();
+        this.delegate.stream(path, out -> content.writeTo(new DigestOutputStream(out, digest) {
+            @Override
+            public void close() {
+            }
+        }));
+        this.hashes.put(path, ContentHash.toHex(digest).substring(0, HASH_LENGTH));
+    }
+
+    /**
+     * hash of the content of a file
+     *
+     * @param path path relative to the root of the site
+     * @return the hash as hex string, null if the file was not written through this sink
+     */
+    public @Nullable String getHash(String path) {
+        return this.hashes.get(path);
+    }
+
+    @Override
+    public boolean publish(String path, File source) throws IOException {
+        return this.delegate.publish(path, source);
+    }
+
+    @Override
+    public void keep(String path) {
+        this.delegate.keep(path);
+    }
+
+    @Override
+    public boolean delete(String path) throws IOException {
+        this.hashes.remove(path);
+        return this.delegate.delete(path);
+    }
+
+    @Override
+    public void createDirectories(Collection<String> directories) throws IOException {
+        this.delegate.createDirectories(directories);
+    }
+
+    @Override
+    public @Nullable File getRoot() {
+        return this.delegate.getRoot();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.delegate.close();
+    }
+}
@@ -0,0 +1,238 @@
+package edu.cmu.webgen.output;
+
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Creates smaller versions of published images, so that browsers can pick an image that
+ * fits the screen with {@code srcset} instead of loading the full resolution.
+ * <p>
+ * For every width in {@link #WIDTHS} below the width of an image, a derivative is created next
+ * to the published image, for example {@code media/3f2a9c1b07d4e8a1-480w.jpg}. Originals are
+ * decoded with subsampling, so that only about the pixels needed for the largest derivative are
+ * held in memory. Images are processed in parallel; a memory budget limits how many are decoded
+ * at the same time. Derivatives are cached on disk by the content hash of their original (which
+ * is part of the published name) and their width, so they are only created once.
+ */
+public class ImageDerivatives {
+
+    public static final int[] WIDTHS = {480, 960, 1600};
+    public static final String DEFAULT_CACHE_DIRECTORY = ".webgen-cache";
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final int MB = 1024 * 1024;
+
+    private final OutputSink output;
+    private final File cacheDirectory;
+    private final boolean write;
+    private final int memoryBudget;
+    private final Semaphore memory;
+
+    /**
+     * @param output         receives the derivatives
+     * @param cacheDirectory directory in which derivatives are cached between builds
+     * @param write          if not set, the derivatives are only determined, not created (used by
+     *                       all but one shard of a sharded build)
+     */
+    public ImageDerivatives(OutputSink output, File cacheDirectory, boolean write) {
+        this.output = output;
+        this.cacheDirectory = new File(cacheDirectory, "images");
+        this.write = write;
+        // decoded images may use about half of the heap, counted in MB
+        this.memoryBudget = (int) Math.max(64, Runtime.getRuntime().maxMemory() / 2 / MB);
+        this.memory = new Semaphore(this.memoryBudget);
+    }
+
+    /**
+     * a version of an image with its width in pixels
+     */
+    public record Derivative(String path, int width) {
+    }
+
+    /**
+     * create the derivatives of published images
+     *
+     * @param images published path (relative to the root of the site) of each image file
+     * @return for each image file, its versions ordered by width including the original; images
+     * that cannot be read or scaled are reported and missing
+     * @throws IOException if a derivative cannot be published
+     */
+    public Map<File, List<Derivative>> create(Map<File, String> images) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            Map<File, Future<List<Derivative>>> results = new LinkedHashMap<>();
+            for (Map.Entry<File, String> image : images.entrySet())
+                results.put(image.getKey(), executor.submit(() -> create(image.getKey(), image.getValue())));
+            Map<File, List<Derivative>> derivatives = new LinkedHashMap<>();
+            for (Map.Entry<File, Future<List<Derivative>>> result : results.entrySet()) {
+                List<Derivative> versions = result.getValue().get();
+                if (!versions.isEmpty())
+                    derivatives.put(result.getKey(), versions);
+            }
+            return derivatives;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Creating image derivatives interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            throw new IOException("Creating image derivatives failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Derivative> create(File source, String publishedPath) throws IOException, InterruptedException {
+        List<Derivative> derivatives = new ArrayList<>();
+        int width;
+        // images ImageIO cannot handle, such as CMYK JPEGs, are published without smaller versions
+        try {
+            String format;
+            int height;
+            try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+                ImageReader reader = in == null ? null : getReader(in);
+                if (reader == null)
+                    return List.of();
+                try {
+                    // only reads the header
+                    format = reader.getFormatName();
+                    width = reader.getWidth(0);
+                    height = reader.getHeight(0);
+                } finally {
+                    reader.dispose();
+                }
+            }
+
+            boolean cached = true;
+            for (int targetWidth : WIDTHS) {
+                if (targetWidth >= width)
+                    break;
+                Derivative derivative = new Derivative(derivativePath(publishedPath, targetWidth), targetWidth);
+                derivatives.add(derivative);
+                cached &= getCachedFile(derivative).isFile();
+            }
+            if (this.write && !cached)
+                createDerivatives(source, format, width, height, derivatives);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cannot create smaller versions of %s, publishing only the original: %s"
+                    .formatted(source, e));
+            return List.of();
+        }
+        if (this.write)
+            for (Derivative derivative : derivatives)
+                this.output.publish(derivative.path(), getCachedFile(derivative));
+        List<Derivative> versions = new ArrayList<>(derivatives);
+        versions.add(new Derivative(publishedPath, width));
+        return versions;
+    }
+
+    private File getCachedFile(Derivative derivative) {
+        return new File(this.cacheDirectory, derivative.path().substring(derivative.path().lastIndexOf('/') + 1));
+    }
+
+    private static ImageReader getReader(ImageInputStream in) {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext())
+            return null;
+        ImageReader reader = readers.next();
+        reader.setInput(in, true, true);
+        return reader;
+    }
+
+    /**
+     * decode the original once, subsampled for the largest derivative, and scale it to all derivatives
+     */
+    private void createDerivatives(File source, String format, int width, int height, List<Derivative> derivatives)
+            throws IOException, InterruptedException {
+        int largest = derivatives.get(derivatives.size() - 1).width();
+        int subsampling = Math.max(1, width / largest);
+        long decodedBytes = 4L * ((width + subsampling - 1) / subsampling) * ((height + subsampling - 1) / subsampling);
+        int permits = (int) Math.min(this.memoryBudget, Math.max(1, 2 * decodedBytes / MB));
+        this.memory.acquire(permits);
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            ImageReader reader = getReader(in);
+            BufferedImage decoded;
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+            this.cacheDirectory.mkdirs();
+            for (Derivative derivative : derivatives) {
+                int targetHeight = Math.max(1, Math.round((float) height * derivative.width() / width));
+                BufferedImage scaled = scale(decoded, derivative.width(), targetHeight, hasAlpha(format));
+                writeImage(scaled, format, getCachedFile(derivative));
+            }
+        } finally {
+            this.memory.release(permits);
+        }
+    }
+
+    private static boolean hasAlpha(String format) {
+        return !format.equalsIgnoreCase("jpeg") && !format.equalsIgnoreCase("jpg");
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height, boolean alpha) {
+        BufferedImage scaled = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    /**
+     * write an image into the cache; written next to the target and moved, so that an interrupted
+     * build does not leave a partial derivative in the cache
+     */
+    private static void writeImage(BufferedImage image, String format, File target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext())
+            throw new IOException("Cannot write images of format " + format);
+        ImageWriter writer = writers.next();
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(temp)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (!hasAlpha(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        } finally {
+            writer.dispose();
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * path of a derivative, for example {@code media/3f2a9c1b07d4e8a1-480w.jpg}
+     */
+    static String derivativePath(String publishedPath, int width) {
+        int slash = publishedPath.lastIndexOf('/');
+        int dot = publishedPath.lastIndexOf('.');
+        if (dot <= slash + 1)
+            return publishedPath + "-" + width + "w";
+        return publishedPath.substring(0, dot) + "-" + width + "w" + publishedPath.substring(dot);
+    }
+}
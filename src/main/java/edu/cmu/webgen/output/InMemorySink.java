@@ -0,0 +1,55 @@
+package edu.cmu.webgen.output;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the generated site in memory, for embedding the generator and for tests.
+ */
+public class InMemorySink implements OutputSink {
+
+    private final Map<String, byte[]> files = new LinkedHashMap<>();
+
+    @Override
+    public synchronized boolean write(String path, ByteBuffer... chunks) {
+        int length = 0;
+        for (ByteBuffer chunk : chunks)
+            length += chunk.remaining();
+        byte[] content = new byte[length];
+        int offset = 0;
+        for (ByteBuffer chunk : chunks) {
+            int len = chunk.remaining();
+            chunk.duplicate().get(content, offset, len);
+            offset += len;
+        }
+        byte[] previous = this.files.put(path, content);
+        return !Arrays.equals(previous, content);
+    }
+
+    @Override
+    public synchronized boolean delete(String path) {
+        return this.files.remove(path) != null;
+    }
+
+    /**
+     * content of a file
+     *
+     * @param path path relative to the root of the site
+     * @return the content, null if the file was not written
+     */
+    public synchronized @Nullable byte[] get(String path) {
+        return this.files.get(path);
+    }
+
+    /**
+     * all files written so far, by path, in the order they were first written
+     */
+    public synchronized Map<String, byte[]> getFiles() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(this.files));
+    }
+}
@@ -0,0 +1,217 @@
+package edu.cmu.webgen.output;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sink that checks the internal links of the generated pages while passing all files on to
+ * another sink.
+ * <p>
+ * The path of every file written, published or kept (see {@link #keep}) through this sink is
+ * collected into a set. Pages are scanned for {@code href} and {@code src} attributes and the
+ * candidates of {@code srcset} attributes in parallel with rendering; each link is resolved
+ * against the directory of its page. Once rendering finished, {@link #check()} reports
+ * the links whose targets were not generated. Links with a scheme (such as {@code https:}), links
+ * to other hosts and links within a page are not checked.
+ */
+public class LinkCheckingSink implements OutputSink {
+
+    private static final Pattern LINK = Pattern.compile("\\s(href|src|srcset)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern EXTERNAL = Pattern.compile("^(?:[a-zA-Z][a-zA-Z0-9+.-]*:|//|#)");
+
+    private final OutputSink delegate;
+    private final Set<String> targets = ConcurrentHashMap.newKeySet();
+    private final Queue<BrokenLink> links = new ConcurrentLinkedQueue<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    private final List<Future<?>> scans = new ArrayList<>();
+
+    /**
+     * @param delegate receives all files
+     */
+    public LinkCheckingSink(OutputSink delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * a link of a page
+     *
+     * @param page   path of the page containing the link
+     * @param link   the link as written in the page
+     * @param target path the link resolves to, relative to the root of the site
+     */
+    public record BrokenLink(String page, String link, String target) {
+    }
+
+    @Override
+    public boolean write(String path, ByteBuffer... chunks) throws IOException {
+        this.targets.add(path);
+        if (path.endsWith(".html")) {
+            // the chunks may be reused once this method returns
+            int size = 0;
+            for (ByteBuffer chunk : chunks)
+                size += chunk.remaining();
+            byte[] page = new byte[size];
+            int pos = 0;
+            for (ByteBuffer chunk : chunks) {
+                int length = chunk.remaining();
+                chunk.duplicate().get(page, pos, length);
+                pos += length;
+            }
+            synchronized (this.scans) {
+                this.scans.add(this.executor.submit(() -> scan(path, page)));
+            }
+        }
+        return this.delegate.write(path, chunks);
+    }
+
+    /**
+     * streamed files are targets of links, but are not scanned for links themselves
+     */
+    @Override
+    public void stream(String path, StreamContent content) throws IOException {
+        this.targets.add(path);
+        this.delegate.stream(path, content);
+    }
+
+    @Override
+    public boolean publish(String path, File source) throws IOException {
+        this.targets.add(path);
+        return this.delegate.publish(path, source);
+    }
+
+    @Override
+    public void keep(String path) {
+        this.targets.add(path);
+        this.delegate.keep(path);
+    }
+
+    @Override
+    public boolean delete(String path) throws IOException {
+        this.targets.remove(path);
+        return this.delegate.delete(path);
+    }
+
+    @Override
+    public void createDirectories(Collection<String> directories) throws IOException {
+        this.delegate.createDirectories(directories);
+    }
+
+    @Override
+    public @Nullable File getRoot() {
+        return this.delegate.getRoot();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.executor.shutdownNow();
+        this.delegate.close();
+    }
+
+    /**
+     * wait for all pages to be scanned and find the links whose targets were not generated; call
+     * once after the last page was written, no further pages can be written afterwards
+     *
+     * @return the broken links, ordered by page
+     * @throws IOException if waiting for the scans is interrupted
+     */
+    public List<BrokenLink> check() throws IOException {
+        this.executor.shutdown();
+        try {
+            synchronized (this.scans) {
+                for (Future<?> scan : this.scans)
+                    scan.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Checking links interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Checking links failed", e.getCause());
+        }
+        List<BrokenLink> broken = new ArrayList<>();
+        for (BrokenLink link : this.links)
+            if (!this.targets.contains(link.target()) && !this.targets.contains(link.target() + "/index.html"))
+                broken.add(link);
+        broken.sort(Comparator.comparing(BrokenLink::page).thenComparing(BrokenLink::link));
+        return broken;
+    }
+
+    /**
+     * number of distinct files written, published or kept through this sink
+     */
+    public int getTargetCount() {
+        return this.targets.size();
+    }
+
+    private void scan(String path, byte[] page) {
+        String directory = path.substring(0, path.lastIndexOf('/') + 1);
+        Matcher link = LINK.matcher(new String(page, StandardCharsets.UTF_8));
+        while (link.find()) {
+            String value = link.group(2) != null ? link.group(2) : link.group(3);
+            if (!link.group(1).equalsIgnoreCase("srcset")) {
+                addLink(path, directory, value);
+                continue;
+            }
+            // candidates such as "/media/a-480w.jpg 480w, /media/a.jpg 1200w"
+            for (String candidate : value.split(",")) {
+                String[] parts = candidate.trim().split("\\s+");
+                addLink(path, directory, parts[0]);
+            }
+        }
+    }
+
+    private void addLink(String path, String directory, String href) {
+        if (href.isEmpty() || EXTERNAL.matcher(href).find())
+            return;
+        this.links.add(new BrokenLink(path, href, resolve(directory, href)));
+    }
+
+    /**
+     * resolve a link against the directory of its page
+     *
+     * @param directory directory of the page relative to the root of the site, empty or ending with "/"
+     * @param href      the link
+     * @return path of the target relative to the root of the site; links to directories refer to
+     * their index.html
+     */
+    static String resolve(String directory, String href) {
+        String path = href.replace("&amp;", "&");
+        int end = path.length();
+        for (char c : new char[]{'?', '#'})
+            if (path.indexOf(c) >= 0)
+                end = Math.min(end, path.indexOf(c));
+        path = path.substring(0, end);
+        if (path.indexOf('%') >= 0) {
+            try {
+                path = URLDecoder.decode(path.replace("+", "%2B"), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                // checked as written
+            }
+        }
+        Deque<String> segments = new ArrayDeque<>();
+        String full = path.startsWith("/") ? path : directory + path;
+        for (String segment : full.split("/")) {
+            if (segment.isEmpty() || segment.equals("."))
+                continue;
+            if (segment.equals(".."))
+                segments.pollLast();
+            else
+                segments.addLast(segment);
+        }
+        String resolved = String.join("/", segments);
+        if (full.endsWith("/") || resolved.isEmpty())
+            resolved = resolved.isEmpty() ? "index.html" : resolved + "/index.html";
+        return resolved;
+    }
+}
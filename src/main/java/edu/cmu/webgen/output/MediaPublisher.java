@@ -0,0 +1,190 @@
+package edu.cmu.webgen.output;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes media files (images and videos) into the output.
+ * <p>
+ * Each file is published under a name derived from a hash of its content, for example
+ * {@code media/3f2a9c1b07d4e8a1.jpg}. Identical files therefore share one published file, a
+ * published file never changes, and files that were published by an earlier build are skipped.
+ * Hashes are cached outside the output by path, size and modification time, so that unchanged files
+ * are not read again; the cache is sorted by path and holds paths relative to the source directory,
+ * so that it only changes with the media files. Hashing and publishing run in parallel, but only on a
+ * few threads, since the work is bound by disk I/O.
+ */
+public class MediaPublisher {
+
+    public static final String MEDIA_DIRECTORY = "media/";
+    public static final String HASH_CACHE = "media-hashes";
+    // earlier builds kept the cache in the target directory, where it was published with the site
+    private static final String OLD_HASH_CACHE = ".webgen-media-hashes";
+    public static final int MAX_PARALLEL_IO = 4;
+    private static final int HASH_LENGTH = 16;
+
+    private final OutputSink output;
+    private final @Nullable File cacheFile;
+    private final @Nullable File sourceDirectory;
+    private final boolean write;
+    private final AtomicInteger published = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private int duplicates = 0;
+
+    /**
+     * @param output    receives the media files
+     * @param cacheFile       file caching the hashes of media files between builds, null for none; it
+     *                        must not be part of the output
+     * @param sourceDirectory directory the paths in the cache are relative to, null for absolute paths
+     * @param write           if not set, the published paths are only computed (used by all but one
+     *                        shard of a sharded build)
+     */
+    public MediaPublisher(OutputSink output, @Nullable File cacheFile, @Nullable File sourceDirectory,
+                          boolean write) {
+        this.output = output;
+        this.cacheFile = cacheFile;
+        this.sourceDirectory = sourceDirectory;
+        this.write = write;
+    }
+
+    /**
+     * publish media files
+     *
+     * @param sources the media files; missing files are reported and skipped
+     * @return the path relative to the root of the site under which each file was published
+     * @throws IOException if a file cannot be read or published
+     */
+    public Map<File, String> publish(Collection<File> sources) throws IOException {
+        Map<String, String> hashCache = loadHashCache();
+        // only the files of this build are cached again, so that removed files leave the cache
+        Map<String, String> usedHashes = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_PARALLEL_IO);
+        try {
+            Map<File, Future<String>> hashing = new LinkedHashMap<>();
+            for (File source : new LinkedHashSet<>(sources)) {
+                if (!source.isFile()) {
+                    System.err.println("Media file not found: " + source);
+                    continue;
+                }
+                hashing.put(source, executor.submit(() -> getPublishedPath(source, hashCache, usedHashes)));
+            }
+            Map<File, String> result = new LinkedHashMap<>();
+            for (Map.Entry<File, Future<String>> entry : hashing.entrySet())
+                result.put(entry.getKey(), entry.getValue().get());
+
+            // one copy per distinct content
+            Map<String, File> distinct = new LinkedHashMap<>();
+            for (Map.Entry<File, String> entry : result.entrySet())
+                distinct.putIfAbsent(entry.getValue(), entry.getKey());
+            this.duplicates = result.size() - distinct.size();
+            if (this.write) {
+                List<Future<?>> publishing = new ArrayList<>();
+                for (Map.Entry<String, File> entry : distinct.entrySet())
+                    publishing.add(executor.submit(() -> {
+                        if (this.output.publish(entry.getKey(), entry.getValue()))
+                            this.published.incrementAndGet();
+                        else
+                            this.unchanged.incrementAndGet();
+                        return null;
+                    }));
+                for (Future<?> future : publishing)
+                    future.get();
+                this.output.delete(OLD_HASH_CACHE);
+            }
+            saveHashCache(usedHashes);
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Publishing media interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            throw new IOException("Publishing media failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String getPublishedPath(File source, Map<String, String> hashCache, Map<String, String> usedHashes)
+            throws IOException {
+        String key = getCacheKey(source);
+        String stamp = source.length() + " " + source.lastModified() + " ";
+        String cached = hashCache.get(key);
+        String hash = cached != null && cached.startsWith(stamp) ? cached.substring(stamp.length()) : hash(source);
+        usedHashes.put(key, stamp + hash);
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        String extension = dot > 0 ? name.substring(dot).toLowerCase(Locale.ROOT) : "";
+        return MEDIA_DIRECTORY + hash + extension;
+    }
+
+    private String getCacheKey(File source) {
+        if (this.sourceDirectory == null)
+            return source.getAbsolutePath();
+        return this.sourceDirectory.toPath().toAbsolutePath().normalize()
+                .relativize(source.toPath().toAbsolutePath().normalize())
+                .toString().replace(File.separatorChar, '/');
+    }
+
+    private static String hash(File source) throws IOException {
+        return ContentHash.of(source.toPath()).substring(0, HASH_LENGTH);
+    }
+
+    /**
+     * the cache has one line per file: its path, a tab, and its size, modification time and hash
+     */
+    private Map<String, String> loadHashCache() throws IOException {
+        Map<String, String> result = new ConcurrentHashMap<>();
+        if (this.cacheFile == null || !this.cacheFile.isFile())
+            return result;
+        for (String line : Files.readAllLines(this.cacheFile.toPath(), StandardCharsets.UTF_8)) {
+            int tab = line.lastIndexOf('\t');
+            if (tab > 0)
+                result.put(line.substring(0, tab), line.substring(tab + 1));
+        }
+        return result;
+    }
+
+    /**
+     * written sorted and without a timestamp, so that the cache only changes with the media files
+     */
+    private void saveHashCache(Map<String, String> hashCache) throws IOException {
+        if (this.cacheFile == null || !this.write)
+            return;
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(hashCache).entrySet())
+            // paths with line breaks cannot be cached and are hashed again in every build
+            if (entry.getKey().indexOf('\n') < 0 && entry.getKey().indexOf('\r') < 0)
+                content.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+        if (this.cacheFile.getParentFile() != null)
+            this.cacheFile.getParentFile().mkdirs();
+        Files.writeString(this.cacheFile.toPath(), content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * number of media files written by this publisher
+     */
+    public int getPublished() {
+        return this.published.get();
+    }
+
+    /**
+     * number of media files that were already published
+     */
+    public int getUnchanged() {
+        return this.unchanged.get();
+    }
+
+    /**
+     * number of media files whose content was identical to another published file
+     */
+    public int getDuplicates() {
+        return this.duplicates;
+    }
+}
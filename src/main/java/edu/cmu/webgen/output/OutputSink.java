@@ -0,0 +1,128 @@
+package edu.cmu.webgen.output;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Destination of the generated site.
+ * <p>
+ * Files are identified by their path relative to the root of the site, with "/" as
+ * separator and without a leading "/", for example {@code p/my-article/index.html}.
+ * Sinks decide how files are stored: as files in a directory ({@link FileSystemSink}),
+ * in memory ({@link InMemorySink}) or as entries of an archive ({@link ZipSink}).
+ */
+public interface OutputSink extends Closeable {
+
+    /**
+     * write a file
+     *
+     * @param path   path of the file relative to the root of the site
+     * @param chunks content of the file, in order; the buffers are not modified
+     * @return true if the file was written, false if the sink already had this content
+     * @throws IOException if the file cannot be written
+     */
+    boolean write(String path, ByteBuffer... chunks) throws IOException;
+
+    /**
+     * write a file by streaming its content, for files too large to build in memory first; the
+     * file is always written, sinks do not compare the content with an existing file
+     * <p>
+     * the default implementation collects the content in memory and writes it like other files
+     *
+     * @param path    path of the file relative to the root of the site
+     * @param content writes the content of the file into the given stream, which it must not close
+     * @throws IOException if the file cannot be written
+     */
+    default void stream(String path, StreamContent content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        content.writeTo(bytes);
+        write(path, ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * publish an existing file, such as an image, under a path of the site
+     * <p>
+     * the default implementation maps the file into memory and writes it like generated content
+     *
+     * @param path   path of the file relative to the root of the site
+     * @param source the file to publish
+     * @return true if the file was written, false if the sink already had this content
+     * @throws IOException if the file cannot be read or written
+     */
+    default boolean publish(String path, File source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<ByteBuffer> chunks = new ArrayList<>();
+            for (long pos = 0; pos < size; pos += Integer.MAX_VALUE)
+                chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(Integer.MAX_VALUE, size - pos)));
+            return write(path, chunks.toArray(new ByteBuffer[0]));
+        }
+    }
+
+    /**
+     * announce directories before files are written into them, so that sinks can create
+     * them in one batch; sinks without directories ignore this
+     *
+     * @param directories paths of the directories relative to the root of the site
+     */
+    default void createDirectories(Collection<String> directories) throws IOException {
+    }
+
+    /**
+     * record that a file of an earlier build is part of this build although it is not written
+     * again, because the writer found it unchanged; sinks that track the files of the site, such as
+     * {@link LinkCheckingSink}, count it, others ignore this
+     *
+     * @param path path of the file relative to the root of the site
+     */
+    default void keep(String path) {
+    }
+
+    /**
+     * remove a file that an earlier build wrote and that is no longer part of the site, such as
+     * an outdated fingerprinted asset; sinks that start empty for every build ignore this
+     *
+     * @param path path of the file relative to the root of the site
+     * @return true if a file was removed
+     * @throws IOException if the file cannot be removed
+     */
+    default boolean delete(String path) throws IOException {
+        return false;
+    }
+
+    /**
+     * the directory the site is written into, where caches and manifests of earlier builds can be
+     * found; sinks that do not write into a directory return null
+     *
+     * @return the directory or null
+     */
+    default @Nullable File getRoot() {
+        return null;
+    }
+
+    /**
+     * finish writing; for archives this completes the archive
+     */
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * produces the content of a streamed file
+     */
+    @FunctionalInterface
+    interface StreamContent {
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,139 @@
+package edu.cmu.webgen.output;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Creates compressed {@code .gz} siblings of generated files, so that a static web server
+ * can serve them without compressing on every request.
+ * <p>
+ * Files are compressed in parallel at the maximum compression level. A manifest in the target
+ * directory records the content hash of every compressed file, so that later builds only
+ * compress files whose content changed. Files below a minimum size are not compressed, since
+ * their compressed form is hardly smaller.
+ */
+public class Precompressor {
+
+    public static final int DEFAULT_MIN_SIZE = 1024;
+    public static final String GZIP_SUFFIX = ".gz";
+
+    private final File root;
+    private final String manifestName;
+    private final int minSize;
+    private final AtomicInteger compressed = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+
+    /**
+     * @param root         directory containing the generated files
+     * @param manifestName name of the manifest with the hashes of compressed files, relative to root;
+     *                     builds sharing a directory concurrently need different manifests
+     * @param minSize      files smaller than this (in bytes) are not compressed
+     */
+    public Precompressor(File root, String manifestName, int minSize) {
+        this.root = root;
+        this.manifestName = manifestName;
+        this.minSize = minSize;
+    }
+
+    /**
+     * compress the given files where needed, using all available cores
+     *
+     * @param paths paths of the files relative to root
+     * @throws IOException if a file cannot be read or compressed
+     */
+    public void compress(Collection<String> paths) throws IOException {
+        File manifestFile = new File(this.root, this.manifestName);
+        Properties manifest = new Properties();
+        if (manifestFile.isFile())
+            try (Reader in = new FileReader(manifestFile, StandardCharsets.UTF_8)) {
+                manifest.load(in);
+            }
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+        for (String name : manifest.stringPropertyNames())
+            hashes.put(name, manifest.getProperty(name));
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (String path : new LinkedHashSet<>(paths))
+                results.add(executor.submit(() -> {
+                    compress(path, hashes);
+                    return null;
+                }));
+            for (Future<Void> result : results)
+                result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Compression interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            throw new IOException("Compression failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Properties updated = new Properties();
+        updated.putAll(hashes);
+        try (Writer out = new FileWriter(manifestFile, StandardCharsets.UTF_8)) {
+            updated.store(out, "content hashes of precompressed files");
+        }
+    }
+
+    private void compress(String path, Map<String, String> hashes) throws IOException {
+        File source = new File(this.root, path);
+        File target = new File(this.root, path + GZIP_SUFFIX);
+        if (source.length() < this.minSize) {
+            // a previous version may have been large enough
+            Files.deleteIfExists(target.toPath());
+            hashes.remove(path);
+            return;
+        }
+        byte[] content = Files.readAllBytes(source.toPath());
+        String hash = hash(content);
+        if (hash.equals(hashes.get(path)) && target.isFile()) {
+            this.unchanged.incrementAndGet();
+            return;
+        }
+        // written next to the target and moved, so that the server never sees a partial file
+        File temp = new File(this.root, path + GZIP_SUFFIX + ".tmp");
+        try (OutputStream out = new MaxLevelGzipStream(new FileOutputStream(temp))) {
+            out.write(content);
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        hashes.put(path, hash);
+        this.compressed.incrementAndGet();
+    }
+
+    private static String hash(byte[] content) {
+        return ContentHash.of(content);
+    }
+
+    /**
+     * number of files compressed by this precompressor
+     */
+    public int getCompressed() {
+        return this.compressed.get();
+    }
+
+    /**
+     * number of files whose compressed version was up-to-date
+     */
+    public int getUnchanged() {
+        return this.unchanged.get();
+    }
+
+    private static class MaxLevelGzipStream extends GZIPOutputStream {
+        MaxLevelGzipStream(OutputStream out) throws IOException {
+            super(out, 64 * 1024);
+            this.def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
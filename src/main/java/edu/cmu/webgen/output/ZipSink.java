@@ -0,0 +1,69 @@
+package edu.cmu.webgen.output;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the site as a single zip archive.
+ * <p>
+ * Entries are streamed into the archive as they are rendered, so no temporary files
+ * are needed; the archive is complete once the sink is closed.
+ */
+public class ZipSink implements OutputSink {
+
+    private final ZipOutputStream zip;
+    private final byte[] copyBuffer = new byte[16 * 1024];
+
+    /**
+     * @param out stream receiving the archive, closed when the sink is closed
+     */
+    public ZipSink(OutputStream out) {
+        this.zip = new ZipOutputStream(out);
+    }
+
+    @Override
+    public synchronized boolean write(String path, ByteBuffer... chunks) throws IOException {
+        this.zip.putNextEntry(new ZipEntry(path));
+        for (ByteBuffer chunk : chunks) {
+            ByteBuffer content = chunk.duplicate();
+            if (content.hasArray()) {
+                this.zip.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+                continue;
+            }
+            // direct buffers are copied in pieces
+            while (content.hasRemaining()) {
+                int len = Math.min(content.remaining(), this.copyBuffer.length);
+                content.get(this.copyBuffer, 0, len);
+                this.zip.write(this.copyBuffer, 0, len);
+            }
+        }
+        this.zip.closeEntry();
+        return true;
+    }
+
+    @Override
+    public synchronized void stream(String path, StreamContent content) throws IOException {
+        this.zip.putNextEntry(new ZipEntry(path));
+        // the entry is closed here, the content must not close the archive
+        content.writeTo(new FilterOutputStream(this.zip) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        this.zip.closeEntry();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.zip.close();
+    }
+}
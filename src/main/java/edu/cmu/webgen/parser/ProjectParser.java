@@ -18,6 +18,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -33,6 +34,29 @@ public class ProjectParser {
 
     private final Parser markdownParser = Parser.builder().extensions(
             Collections.singletonList(YamlFrontMatterExtension.create())).build();
+    private final boolean streaming;
+    private final boolean reproducible;
+
+    public ProjectParser() {
+        this(false);
+    }
+
+    public ProjectParser(boolean streaming) {
+        this(streaming, false);
+    }
+
+    /**
+     * @param streaming if set, the text of markdown documents is not kept in memory after loading;
+     *                  documents keep their title and preview and read their file again when
+     *                  their page is rendered
+     * @param reproducible if set, the files of each directory are read in the order of their names, so
+     *                     that the order of inner articles and content does not depend on the file system;
+     *                     otherwise they are read in the order the file system lists them
+     */
+    public ProjectParser(boolean streaming, boolean reproducible) {
+        this.streaming = streaming;
+        this.reproducible = reproducible;
+    }
 
     /**
      * loading a whole directory as a project
@@ -48,14 +72,16 @@ public class ProjectParser {
         LocalDateTime folderLastUpdate = new WebGen().getDateTime(attr.lastModifiedTime());
         ProjectBuilder builder = new ProjectBuilder(dir.getName(), folderCreated, folderLastUpdate);
         processProject(builder, dir);
-        return builder.buildProject();
+        Project project = builder.buildProject();
+        project.setSourceDirectory(dir);
+        return project;
     }
 
     /**
      * in the top-level directory only look for subdirectories and metadata files
      */
     private void processProject(@NotNull ProjectBuilder builder, @NotNull File dir) throws IOException, ProjectFormatException {
-        File[] files = dir.listFiles();
+        File[] files = listFiles(dir);
         if (files != null) {
             for (File file : files) {
                 if (file.isDirectory())
@@ -79,7 +105,7 @@ public class ProjectParser {
         LocalDateTime folderCreated = new WebGen().getDateTime(attr.creationTime());
         LocalDateTime folderLastUpdate = new WebGen().getDateTime(attr.lastModifiedTime());
         builder.openDirectory(dir.getName(), folderCreated, folderLastUpdate);
-        File[] files = dir.listFiles();
+        File[] files = listFiles(dir);
         if (files != null) {
             for (File file : files) {
                 if (file.isDirectory())
@@ -91,6 +117,20 @@ public class ProjectParser {
         builder.finishDirectory();
     }
 
+    /**
+     * files of a directory, sorted by name in reproducible mode, since the order of
+     * {@link File#listFiles()} is unspecified and determines the order of inner articles and content
+     * <p>
+     * sorting is limited to reproducible mode because the order also decides which document gives
+     * an entry its title and thus its address; sorting in every mode would move existing pages
+     */
+    private File[] listFiles(@NotNull File dir) {
+        File[] files = dir.listFiles();
+        if (files != null && this.reproducible)
+            Arrays.sort(files);
+        return files;
+    }
+
     /**
      * check for supported file types and load the files
      */
@@ -180,7 +220,19 @@ public class ProjectParser {
             LocalDateTime fileCreated = new WebGen().getDateTime(attr.creationTime());
             LocalDateTime fileLastUpdate = new WebGen().getDateTime(attr.lastModifiedTime());
             long fileSize = attr.size();
-            builder.foundTextDocument(text, metadata, fileCreated, fileLastUpdate, fileSize);
+            builder.foundTextDocument(text, metadata, fileCreated, fileLastUpdate, fileSize,
+                    this.streaming ? () -> reloadMarkdown(file) : null);
+        }
+    }
+
+    /**
+     * read the paragraphs of a markdown file again, for documents that do not keep them in memory
+     */
+    private List<FormattedTextDocument.Paragraph> reloadMarkdown(@NotNull File file) {
+        try (FileReader fr = new FileReader(file)) {
+            return parseParagraphList(this.markdownParser.parseReader(fr).getFirstChild());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + file, e);
         }
     }
 
@@ -1,31 +1,84 @@
 package edu.cmu.webgen.project;
 
-import com.github.jknack.handlebars.internal.text.StringEscapeUtils;
 import edu.cmu.webgen.WebGen;
+import edu.cmu.webgen.rendering.HtmlBuffer;
+import edu.cmu.webgen.rendering.HtmlEscaper;
+import edu.cmu.webgen.rendering.HtmlSink;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.StringWriter;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Represents formatted text documents, in which text is structured in to paragraphs
  * with formatted text.
  */
 public class FormattedTextDocument extends AbstractContent {
-    private final List<Paragraph> paragraphs;
+    /**
+     * longest preview text (in characters) that is created of a document
+     */
+    public static final int MAX_PREVIEW_LENGTH = 200;
+
+    private final @Nullable List<Paragraph> paragraphs;
+    private final List<Paragraph> previewParagraphs;
+    private final @Nullable Supplier<List<Paragraph>> reloader;
     private final Metadata metadata;
     private final long textSize;
+    private final @Nullable String title;
 
     public FormattedTextDocument(List<Paragraph> paragraphs, Metadata metadata, LocalDateTime created,
                           LocalDateTime lastUpdate, long textSize) {
+        this(paragraphs, metadata, created, lastUpdate, textSize, null);
+    }
+
+    /**
+     * creates a document that, if a reloader is provided, does not keep its paragraphs in memory.
+     * <p>
+     * Such a document only keeps its title and the few paragraphs needed for its preview. All
+     * other uses of the paragraphs read them again with the reloader, so that the memory needed
+     * for a large project does not depend on the size of its documents.
+     *
+     * @param reloader reads the paragraphs of this document again, null to keep them in memory
+     */
+    public FormattedTextDocument(List<Paragraph> paragraphs, Metadata metadata, LocalDateTime created,
+                          LocalDateTime lastUpdate, long textSize, @Nullable Supplier<List<Paragraph>> reloader) {
         super(created, lastUpdate);
-        this.paragraphs = paragraphs;
         this.metadata = metadata;
         this.textSize = textSize;
+        this.reloader = reloader;
+        this.title = findTitle(metadata, paragraphs);
+        if (reloader == null) {
+            this.paragraphs = paragraphs;
+            this.previewParagraphs = paragraphs;
+        } else {
+            this.paragraphs = null;
+            this.previewParagraphs = findPreviewParagraphs(paragraphs);
+        }
     }
 
-    public void toHtml(StringWriter w) {
-        for (Paragraph p : this.paragraphs) {
+    /**
+     * the paragraphs at the start of a document that are used for a preview of at most
+     * {@link #MAX_PREVIEW_LENGTH} characters
+     */
+    private static List<Paragraph> findPreviewParagraphs(List<Paragraph> paragraphs) {
+        List<Paragraph> result = new ArrayList<>();
+        try (HtmlBuffer discarded = HtmlBuffer.acquire()) {
+            int maxLength = MAX_PREVIEW_LENGTH;
+            for (Paragraph p : paragraphs) {
+                if (maxLength <= 0)
+                    break;
+                result.add(p);
+                maxLength = new WebGen().previewText(p, discarded, maxLength);
+                discarded.reset();
+            }
+        }
+        return result;
+    }
+
+    public void toHtml(HtmlSink w) {
+        for (Paragraph p : getParagraphs()) {
             p.toHtml(w);
         }
     }
@@ -38,8 +91,9 @@ public class FormattedTextDocument extends AbstractContent {
      * @return length of remaining length budget
      * @
      */
-    public int toPreview(StringWriter w, int maxLength) {
-        for (Paragraph p : this.paragraphs) {
+    public int toPreview(HtmlSink w, int maxLength) {
+        List<Paragraph> paragraphs = maxLength <= MAX_PREVIEW_LENGTH ? this.previewParagraphs : getParagraphs();
+        for (Paragraph p : paragraphs) {
             if (maxLength > 0)
                 maxLength = new WebGen().previewText(p, w, maxLength);
         }
@@ -48,27 +102,36 @@ public class FormattedTextDocument extends AbstractContent {
 
     /**
      * Returns all paragraphs in this document
+     * <p>
+     * If the paragraphs are not kept in memory, they are read again on every call.
      *
      * @return paragraphs
      */
     public List<Paragraph> getParagraphs() {
-        return this.paragraphs;
+        if (this.paragraphs != null)
+            return this.paragraphs;
+        assert this.reloader != null;
+        return this.reloader.get();
     }
 
 
     public String getTitle() {
+        return this.title;
+    }
+
+    private static @Nullable String findTitle(Metadata metadata, List<Paragraph> paragraphs) {
         //metadata title takes priorty
-        if (this.metadata.has("title"))
-            return this.metadata.get("title");
+        if (metadata.has("title"))
+            return metadata.get("title");
         // if there are captions, take the first one
-        for (FormattedTextDocument.Paragraph p : this.paragraphs) {
+        for (FormattedTextDocument.Paragraph p : paragraphs) {
             if (p instanceof Heading h)
                 if (h.level() <= 1)
                     return h.text().toPlainText();
         }
         //if the first paragraph is text, let's take the first line
-        if (this.paragraphs.size() >= 1) {
-            if (this.paragraphs.get(0) instanceof TextParagraph text) {
+        if (paragraphs.size() >= 1) {
+            if (paragraphs.get(0) instanceof TextParagraph text) {
                 String s = text.text().toPlainText();
                 if (s.contains("\n")) s = s.substring(0, s.indexOf("\n"));
                 if (!"".equals(s.trim()))
@@ -83,7 +146,7 @@ public class FormattedTextDocument extends AbstractContent {
     }
 
     public interface FormattedTextContent {
-        void toHtml(StringWriter w);
+        void toHtml(HtmlSink w);
 
     }
 
@@ -109,7 +172,7 @@ public class FormattedTextDocument extends AbstractContent {
         }
 
         @Override
-        public void toHtml(StringWriter w) {
+        public void toHtml(HtmlSink w) {
             for (TextFragment t : getFragments()) {
                 t.toHtml(w);
             }
@@ -132,7 +195,7 @@ public class FormattedTextDocument extends AbstractContent {
     public static record Heading(TextFragment text, int level) implements Paragraph {
 
         @Override
-        public void toHtml(StringWriter w) {
+        public void toHtml(HtmlSink w) {
             int l = this.level + 1;
             w.write("<h" + l + ">");
             this.text.toHtml(w);
@@ -144,7 +207,7 @@ public class FormattedTextDocument extends AbstractContent {
 
     public static record TextParagraph(TextFragment text) implements Paragraph {
         @Override
-        public void toHtml(StringWriter w) {
+        public void toHtml(HtmlSink w) {
             w.write("<p>");
             this.text.toHtml(w);
             w.write("</p>");
@@ -153,18 +216,18 @@ public class FormattedTextDocument extends AbstractContent {
 
     public static record HorizontalRow() implements Paragraph {
         @Override
-        public void toHtml(StringWriter w) {
+        public void toHtml(HtmlSink w) {
             w.write("<hr />");
         }
 
-        public int toPreview(StringWriter w, int maxLength) {
+        public int toPreview(HtmlSink w, int maxLength) {
             return maxLength;
         }
     }
 
     public static record BulletList(List<Paragraph> items) implements Paragraph {
         @Override
-        public void toHtml(StringWriter w) {
+        public void toHtml(HtmlSink w) {
             w.write("<p><ul>");
             for (Paragraph t : this.items) {
                 w.write("<li>");
@@ -177,7 +240,7 @@ public class FormattedTextDocument extends AbstractContent {
 
     public static record BlockQuote(List<Paragraph> paragraphs) implements Paragraph {
         @Override
-        public void toHtml(StringWriter w) {
+        public void toHtml(HtmlSink w) {
             w.write("<blockquote>");
             for (Paragraph p : this.paragraphs) {
                 p.toHtml(w);
@@ -189,21 +252,21 @@ public class FormattedTextDocument extends AbstractContent {
     //    public static record Image(String source, String paragraphs) implements Paragraph {}
     public static record CodeBlock(String source, String language) implements Paragraph {
         @Override
-        public void toHtml(StringWriter w) {
+        public void toHtml(HtmlSink w) {
             w.write("<pre>");
             w.write(this.source);
             w.write("</pre>");
         }
 
-        public int toPreview(StringWriter w, int maxLength) {
+        public int toPreview(HtmlSink w, int maxLength) {
             return maxLength;
         }
     }
 
     public static record PlainTextFragment(String text) implements TextFragment {
         @Override
-        public void toHtml(StringWriter w) {
-            w.write(StringEscapeUtils.escapeHtml4(this.text));
+        public void toHtml(HtmlSink w) {
+            HtmlEscaper.escape(this.text, w);
         }
 
         @Override
@@ -214,7 +277,7 @@ public class FormattedTextDocument extends AbstractContent {
 
     public static record InlineImage(String source, TextFragment text) implements TextFragment {
         @Override
-        public void toHtml(StringWriter w) {
+        public void toHtml(HtmlSink w) {
             w.write("<img src=\"" + this.source + "\" alt=\"");
             this.text.toHtml(w);
             w.write("\" />");
@@ -239,7 +302,7 @@ public class FormattedTextDocument extends AbstractContent {
         }
 
         @Override
-        public void toHtml(StringWriter w) {
+        public void toHtml(HtmlSink w) {
             w.write(this.htmlOpen);
             this.text.toHtml(w);
             w.write(this.htmlClose);
@@ -1,7 +1,9 @@
 package edu.cmu.webgen.project;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -10,6 +12,7 @@ import java.util.*;
  */
 public class Project {
     private String ownerOrg;
+    private @Nullable File sourceDirectory = null;
     final List<Event> events;
     final List<Article> articles;
     final String title;
@@ -95,4 +98,18 @@ public class Project {
     public String getOwnerOrg() {
         return this.ownerOrg;
     }
+
+    /**
+     * the directory the project was loaded from; paths of media files relative to it are their
+     * paths in the site before publishing
+     *
+     * @return the directory, null if the project was not loaded from a directory
+     */
+    public @Nullable File getSourceDirectory() {
+        return this.sourceDirectory;
+    }
+
+    public void setSourceDirectory(@Nullable File sourceDirectory) {
+        this.sourceDirectory = sourceDirectory;
+    }
 }
@@ -1,10 +1,12 @@
 package edu.cmu.webgen.project;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * The {@link ProjectBuilder} gets raw data/events from the {@link edu.cmu.webgen.parser.ProjectParser}
@@ -80,10 +82,20 @@ public class ProjectBuilder {
 
     public void foundTextDocument(List<FormattedTextDocument.Paragraph> text, Map<String, String> rawMetadata,
                                   LocalDateTime fileCreated, LocalDateTime fileLastUpdate, long fileSize) throws ProjectFormatException {
+        foundTextDocument(text, rawMetadata, fileCreated, fileLastUpdate, fileSize, null);
+    }
+
+    /**
+     * @param reloader if not null, the text is not kept in memory but read again when needed,
+     *                 see {@link FormattedTextDocument}
+     */
+    public void foundTextDocument(List<FormattedTextDocument.Paragraph> text, Map<String, String> rawMetadata,
+                                  LocalDateTime fileCreated, LocalDateTime fileLastUpdate, long fileSize,
+                                  @Nullable Supplier<List<FormattedTextDocument.Paragraph>> reloader) throws ProjectFormatException {
         assert !this.dirStack.isEmpty();
         Metadata metadata = new Metadata(rawMetadata);
         this.dirStack.peek().addMetadata(metadata);
-        var doc = new FormattedTextDocument(text, metadata, fileCreated, fileLastUpdate, fileSize);
+        var doc = new FormattedTextDocument(text, metadata, fileCreated, fileLastUpdate, fileSize, reloader);
         this.dirStack.peek().addContent(doc);
         this.topics.put(doc, Topic.from(metadata));
     }
@@ -0,0 +1,59 @@
+package edu.cmu.webgen.rendering;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Writer and sink passing all output on to an {@link Appendable}, such as the output buffer
+ * of a handlebars helper, without buffering it.
+ */
+public final class AppendableWriter extends Writer implements HtmlSink {
+
+    private final Appendable out;
+
+    /**
+     * @param out receives all output
+     */
+    public AppendableWriter(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int c) {
+        try {
+            this.out.append((char) c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(String s) {
+        write(s, 0, s.length());
+    }
+
+    @Override
+    public void write(String s, int off, int len) {
+        try {
+            // not append(s, off, off + len): handlebars' buffer rejects an end index of 0, i.e. empty strings
+            this.out.append(CharBuffer.wrap(s, off, off + len));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        this.out.append(CharBuffer.wrap(cbuf, off, len));
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
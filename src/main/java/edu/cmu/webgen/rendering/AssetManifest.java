@@ -0,0 +1,190 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.output.ContentHash;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Names under which static assets such as the stylesheet are published.
+ * <p>
+ * With fingerprinting, an asset is published under a name that contains a hash of its content,
+ * for example {@code css/main.3f2a9c1b07.css} for {@code css/main.css}. Such a file never changes,
+ * so browsers can cache it without revalidating; a changed asset gets a new name. Templates refer
+ * to assets by their original path through the {@code asset} helper of the {@link TemplateEngine}.
+ * The manifest of all fingerprinted assets lets the web server mark them as immutable; the next
+ * build reads it to remove the assets that are no longer published.
+ */
+public class AssetManifest {
+
+    public static final String MANIFEST_PATH = "assets-manifest.json";
+    private static final int HASH_LENGTH = 10;
+
+    private final boolean fingerprint;
+    private final Map<String, String> publishedPaths = new TreeMap<>();
+
+    /**
+     * @param fingerprint if not set, assets are published under their original path
+     */
+    public AssetManifest(boolean fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public boolean isFingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * register an asset and determine the path under which it is published
+     *
+     * @param path    original path of the asset relative to the root of the site
+     * @param content content of the asset
+     * @return path under which the asset is published
+     */
+    public synchronized String register(String path, byte[] content) {
+        String publishedPath = this.fingerprint ? fingerprintedPath(path, hash(content)) : path;
+        this.publishedPaths.put(path, publishedPath);
+        return publishedPath;
+    }
+
+    /**
+     * register an asset that was already published under a name identifying its content
+     *
+     * @param path          original path of the asset
+     * @param publishedPath path under which the asset is published
+     */
+    public synchronized void registerPublished(String path, String publishedPath) {
+        this.publishedPaths.put(path, publishedPath);
+    }
+
+    /**
+     * path under which an asset is published
+     *
+     * @param path original path of the asset relative to the root of the site
+     * @return published path, the original path if the asset was not registered
+     */
+    public synchronized String resolve(String path) {
+        return this.publishedPaths.getOrDefault(path, path);
+    }
+
+    /**
+     * paths under which the registered assets are published
+     */
+    public synchronized Set<String> getPublishedPaths() {
+        return new HashSet<>(this.publishedPaths.values());
+    }
+
+    /**
+     * inserts the hash before the extension of the file name
+     */
+    static String fingerprintedPath(String path, String hash) {
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash + 1)
+            return path + "." + hash;
+        return path.substring(0, dot) + "." + hash + path.substring(dot);
+    }
+
+    private static String hash(byte[] content) {
+        return ContentHash.of(content).substring(0, HASH_LENGTH);
+    }
+
+    /**
+     * the manifest as JSON object from original to published paths, sorted by original path
+     *
+     * @return UTF-8 encoded JSON
+     */
+    public synchronized byte[] toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        String separator = "";
+        for (Map.Entry<String, String> asset : this.publishedPaths.entrySet()) {
+            json.append(separator).append("  ");
+            appendJsonString(json, asset.getKey());
+            json.append(": ");
+            appendJsonString(json, asset.getValue());
+            separator = ",\n";
+        }
+        json.append("\n}\n");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * read a manifest written by {@link #toJson()}
+     *
+     * @param json the manifest
+     * @return map from original to published paths
+     * @throws IOException if the manifest is not well-formed
+     */
+    public static Map<String, String> parseJson(String json) throws IOException {
+        Map<String, String> paths = new TreeMap<>();
+        int[] pos = {skipWhitespace(json, 0)};
+        expect(json, pos, '{');
+        if (json.charAt(skipWhitespace(json, pos[0])) == '}')
+            return paths;
+        do {
+            String path = readJsonString(json, pos);
+            expect(json, pos, ':');
+            paths.put(path, readJsonString(json, pos));
+        } while (tryRead(json, pos, ','));
+        expect(json, pos, '}');
+        return paths;
+    }
+
+    private static int skipWhitespace(String json, int pos) {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos)))
+            pos++;
+        return pos;
+    }
+
+    private static boolean tryRead(String json, int[] pos, char c) {
+        pos[0] = skipWhitespace(json, pos[0]);
+        if (pos[0] < json.length() && json.charAt(pos[0]) == c) {
+            pos[0]++;
+            return true;
+        }
+        return false;
+    }
+
+    private static void expect(String json, int[] pos, char c) throws IOException {
+        if (!tryRead(json, pos, c))
+            throw new IOException("Invalid asset manifest, expected '%c' at %d".formatted(c, pos[0]));
+    }
+
+    private static String readJsonString(String json, int[] pos) throws IOException {
+        expect(json, pos, '"');
+        StringBuilder s = new StringBuilder();
+        try {
+            for (char c = json.charAt(pos[0]++); c != '"'; c = json.charAt(pos[0]++)) {
+                if (c == '\\') {
+                    c = json.charAt(pos[0]++);
+                    if (c == 'u') {
+                        c = (char) Integer.parseInt(json.substring(pos[0], pos[0] + 4), 16);
+                        pos[0] += 4;
+                    }
+                }
+                s.append(c);
+            }
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new IOException("Invalid asset manifest, unterminated string", e);
+        }
+        return s.toString();
+    }
+
+    static void appendJsonString(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                json.append('\\').append(c);
+            else if (c < 0x20)
+                json.append("\\u%04x".formatted((int) c));
+            else
+                json.append(c);
+        }
+        json.append('"');
+    }
+}
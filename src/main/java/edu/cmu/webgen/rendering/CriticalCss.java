@@ -0,0 +1,232 @@
+package edu.cmu.webgen.rendering;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the rules of the stylesheet that a family of pages can use, so that they can be
+ * inlined into the head of those pages and the page can be displayed before the full stylesheet
+ * is loaded.
+ * <p>
+ * A family consists of the pages rendered with the same page template. The elements, classes and
+ * ids it can contain are collected from that template, the partials it includes and what the
+ * {@link Renderer} puts into these pages: entry pages show the full documents with their content
+ * fragments and breadcrumbs, list pages only previews of documents. A rule is kept if one of its
+ * selectors only refers to those. The rules are extracted once per template and reused for all pages
+ * of the family.
+ */
+public class CriticalCss {
+
+    // elements emitted by FormattedTextDocument, which are not visible in the templates
+    private static final Set<String> DOCUMENT_ELEMENTS = Set.of("h1", "h2", "h3", "h4", "h5", "h6", "p", "hr",
+            "ul", "li", "blockquote", "pre", "img", "em", "strong", "a");
+    // elements and classes of previews of documents, see WebGen.previewText
+    private static final Set<String> PREVIEW_ELEMENTS = Set.of("p", "ul", "li", "blockquote", "em", "strong", "a");
+    private static final Set<String> PREVIEW_CLASSES = Set.of("previewh2", "previewh3", "previewh4", "previewh5",
+            "previewh6", "previewh7");
+    // templates the renderer uses for the content of entries, besides the partials of the page templates
+    private static final List<String> FRAGMENT_TEMPLATES = List.of("content-fragment-image",
+            "content-fragment-video", "content-fragment-youtube", "content-fragment-youtube-facade",
+            "article-preview");
+    // conditional sections of the frame, only kept for families whose pages fill them
+    private static final Set<String> FRAME_SECTIONS = Set.of("breadcrumbs");
+    private static final Family ENTRY = new Family(DOCUMENT_ELEMENTS, Set.of(), FRAGMENT_TEMPLATES, FRAME_SECTIONS);
+    private static final Family PREVIEWS = new Family(PREVIEW_ELEMENTS, PREVIEW_CLASSES, List.of(), Set.of());
+    private static final Map<String, Family> FAMILIES = Map.of(
+            "article.html", ENTRY,
+            // events have no breadcrumbs yet
+            "event.html", new Family(DOCUMENT_ELEMENTS, Set.of(), FRAGMENT_TEMPLATES, Set.of()),
+            "homepage.html", PREVIEWS,
+            "article-list.html", PREVIEWS,
+            "event-list.html", PREVIEWS,
+            "topic-list.html", new Family(Set.of(), Set.of(), List.of(), Set.of()));
+    private static final Pattern SECTION = Pattern.compile("(?s)\\{\\{#if (\\w+)}}.*?\\{\\{/if}}");
+    private static final Pattern PARTIAL = Pattern.compile("\\{\\{#?>\\s*([\\w.-]+)");
+    private static final Pattern ELEMENT = Pattern.compile("<([a-zA-Z][a-zA-Z0-9]*)");
+    private static final Pattern ATTRIBUTE = Pattern.compile("\\b(class|id)\\s*=\\s*\"([^\"]*)\"");
+    private static final Pattern EXPRESSION = Pattern.compile("\\{\\{.*?}}");
+    private static final Pattern PSEUDO = Pattern.compile("::?[\\w-]+(\\([^)]*\\))?|\\[[^]]*]");
+    private static final Pattern SIMPLE_SELECTOR = Pattern.compile("([.#]?)([\\w-]+)");
+
+    private final List<Rule> rules;
+    private final Map<String, String> extracted = new HashMap<>();
+
+    /**
+     * @param stylesheet the full stylesheet
+     */
+    public CriticalCss(String stylesheet) {
+        this.rules = parse(stylesheet);
+    }
+
+    /**
+     * the rules needed by the pages of a template, as compact CSS
+     *
+     * @param templateName name of the page template without the ".hbs" extension
+     * @return the rules, cached per template
+     */
+    public synchronized String forTemplate(String templateName) {
+        return this.extracted.computeIfAbsent(templateName, this::extract);
+    }
+
+    private String extract(String templateName) {
+        // templates of unknown families may contain anything an entry page contains
+        Family family = FAMILIES.getOrDefault(templateName, ENTRY);
+        Selectors used = new Selectors();
+        used.elements.addAll(family.elements());
+        used.classes.addAll(family.classes());
+        Set<String> templates = new LinkedHashSet<>();
+        collectTemplates(templateName, templates);
+        // the frame header is rendered separately from the page templates
+        collectTemplates("website-header", templates);
+        for (String fragmentTemplate : family.templates())
+            collectTemplates(fragmentTemplate, templates);
+        for (String template : templates)
+            used.addFrom(withoutUnusedSections(readTemplate(template), family));
+
+        StringBuilder css = new StringBuilder();
+        for (Rule rule : this.rules) {
+            if (rule.selectors == null) {
+                // at-rules are kept as they are
+                css.append(rule.body);
+                continue;
+            }
+            List<String> selectors = new ArrayList<>();
+            for (String selector : rule.selectors)
+                if (used.matches(selector))
+                    selectors.add(selector);
+            if (!selectors.isEmpty())
+                css.append(String.join(",", selectors)).append('{').append(rule.body).append('}');
+        }
+        return css.toString();
+    }
+
+    private static String withoutUnusedSections(String template, Family family) {
+        return SECTION.matcher(template).replaceAll(section ->
+                FRAME_SECTIONS.contains(section.group(1)) && !family.sections().contains(section.group(1)) ? "" :
+                        Matcher.quoteReplacement(section.group()));
+    }
+
+    private static void collectTemplates(String templateName, Set<String> templates) {
+        if (!templates.add(templateName))
+            return;
+        Matcher partial = PARTIAL.matcher(readTemplate(templateName));
+        while (partial.find())
+            collectTemplates(partial.group(1), templates);
+    }
+
+    private static String readTemplate(String templateName) {
+        try (InputStream in = CriticalCss.class.getResourceAsStream("/html/" + templateName + ".hbs")) {
+            if (in == null)
+                throw new IllegalArgumentException("Unknown template " + templateName);
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * splits a stylesheet into rules; blocks of at-rules such as @media are not split further
+     */
+    private static List<Rule> parse(String stylesheet) {
+        String css = stylesheet.replaceAll("(?s)/\\*.*?\\*/", "");
+        List<Rule> result = new ArrayList<>();
+        int pos = 0;
+        while (pos < css.length()) {
+            int open = css.indexOf('{', pos);
+            if (open < 0)
+                break;
+            String prelude = css.substring(pos, open).trim();
+            if (prelude.startsWith("@") && prelude.contains(";")) {
+                // statements such as @import or @charset
+                int end = css.indexOf(';', pos) + 1;
+                result.add(new Rule(null, css.substring(pos, end).trim()));
+                pos = end;
+                continue;
+            }
+            int close = findClosingBrace(css, open);
+            String body = css.substring(open + 1, close);
+            if (prelude.startsWith("@"))
+                result.add(new Rule(null, prelude + "{" + body.trim() + "}"));
+            else
+                result.add(new Rule(Arrays.stream(prelude.split(",")).map(String::trim).toList(),
+                        body.trim().replaceAll("\\s+", " ")));
+            pos = close + 1;
+        }
+        return result;
+    }
+
+    private static int findClosingBrace(String css, int open) {
+        int depth = 0;
+        for (int i = open; i < css.length(); i++) {
+            char c = css.charAt(i);
+            if (c == '{') depth++;
+            if (c == '}' && --depth == 0) return i;
+        }
+        return css.length() - 1;
+    }
+
+    /**
+     * what the renderer puts into the pages of a family besides their templates
+     *
+     * @param elements  elements of the documents shown on the pages
+     * @param classes   classes of the documents shown on the pages
+     * @param templates templates rendered into the content of the pages
+     * @param sections  conditional sections of the frame that the pages fill
+     */
+    private record Family(Set<String> elements, Set<String> classes, List<String> templates, Set<String> sections) {
+    }
+
+    /**
+     * a rule with its selectors, or an at-rule (selectors null) with its full text
+     */
+    private record Rule(List<String> selectors, String body) {
+    }
+
+    /**
+     * elements, classes and ids that can occur in a family of pages
+     */
+    private static class Selectors {
+        final Set<String> elements = new HashSet<>(List.of("html", "body"));
+        final Set<String> classes = new HashSet<>();
+        final Set<String> ids = new HashSet<>();
+
+        void addFrom(String template) {
+            Matcher element = ELEMENT.matcher(template);
+            while (element.find())
+                this.elements.add(element.group(1).toLowerCase(Locale.ROOT));
+            Matcher attribute = ATTRIBUTE.matcher(template);
+            while (attribute.find()) {
+                Set<String> target = attribute.group(1).equals("class") ? this.classes : this.ids;
+                for (String name : EXPRESSION.matcher(attribute.group(2)).replaceAll(" ").trim().split("\\s+"))
+                    if (!name.isEmpty())
+                        target.add(name);
+            }
+        }
+
+        /**
+         * whether all elements, classes and ids named by a selector can occur; pseudo-classes
+         * and attribute conditions are ignored
+         */
+        boolean matches(String selector) {
+            Matcher simple = SIMPLE_SELECTOR.matcher(PSEUDO.matcher(selector).replaceAll(""));
+            while (simple.find()) {
+                String name = simple.group(2);
+                boolean found = switch (simple.group(1)) {
+                    case "." -> this.classes.contains(name);
+                    case "#" -> this.ids.contains(name);
+                    default -> this.elements.contains(name.toLowerCase(Locale.ROOT));
+                };
+                if (!found)
+                    return false;
+            }
+            return true;
+        }
+    }
+}
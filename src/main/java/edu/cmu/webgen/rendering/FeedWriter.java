@@ -0,0 +1,204 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.output.ContentHash;
+import edu.cmu.webgen.output.OutputSink;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Writes Atom feeds of the site and of its topics.
+ * <p>
+ * Each feed is written with a streaming XML writer. A manifest records a digest of the entries
+ * of each feed (their addresses, titles and dates), so that a feed is only generated again if
+ * one of its entries changed; the summaries of entries are only created for feeds that are
+ * written. Call {@link #finish()} after the last feed to write the manifest.
+ */
+public class FeedWriter {
+
+    public static final String MANIFEST = ".webgen-feeds.manifest";
+    public static final int DEFAULT_FEED_SIZE = 20;
+    private static final String NAMESPACE = "http://www.w3.org/2005/Atom";
+
+    private final OutputSink output;
+    private final String siteUrl;
+    private final String author;
+    private final @Nullable File root;
+    private final Properties manifest;
+    private final Map<String, String> updated = new TreeMap<>();
+    private int feedsWritten = 0;
+    private int feedsUnchanged = 0;
+
+    /**
+     * @param output  receives the feeds
+     * @param siteUrl absolute URL of the root of the site, such as {@code https://example.org}
+     * @param author  name of the author of all entries
+     * @param root    directory the output is written to, used to find the manifest and feeds of
+     *                an earlier build; null to always write all feeds
+     * @throws IOException if the manifest of an earlier build cannot be read
+     */
+    public FeedWriter(OutputSink output, String siteUrl, String author, @Nullable File root) throws IOException {
+        this.output = output;
+        this.siteUrl = siteUrl.endsWith("/") ? siteUrl.substring(0, siteUrl.length() - 1) : siteUrl;
+        this.author = author;
+        this.root = root;
+        this.manifest = new Properties();
+        File manifestFile = root == null ? null : new File(root, MANIFEST);
+        if (manifestFile != null && manifestFile.isFile())
+            try (Reader in = new FileReader(manifestFile, StandardCharsets.UTF_8)) {
+                this.manifest.load(in);
+            }
+    }
+
+    /**
+     * an entry of a feed
+     *
+     * @param pagePath  path of the entry's page (starts and ends with a "/")
+     * @param title     title of the entry
+     * @param published publication date
+     * @param updated   last update
+     * @param summary   creates the html of the entry's summary, only called if the feed is written
+     */
+    public record Entry(String pagePath, String title, LocalDateTime published, LocalDateTime updated,
+                        Supplier<String> summary) {
+    }
+
+    /**
+     * write a feed unless its entries did not change since the last build
+     *
+     * @param feedPath path of the feed relative to the root of the site
+     * @param title    title of the feed
+     * @param pagePath path of the page showing the entries of the feed
+     * @param entries  entries of the feed, newest first
+     * @return true if the feed was written
+     * @throws IOException if the feed cannot be written
+     */
+    public boolean write(String feedPath, String title, String pagePath, List<Entry> entries) throws IOException {
+        String digest = digest(title, pagePath, entries);
+        this.updated.put(feedPath, digest);
+        if (this.root != null && digest.equals(this.manifest.getProperty(feedPath))
+                && new File(this.root, feedPath).isFile()) {
+            this.output.keep(feedPath);
+            this.feedsUnchanged++;
+            return false;
+        }
+        this.output.write(feedPath, ByteBuffer.wrap(render(feedPath, title, pagePath, entries)));
+        this.feedsWritten++;
+        return true;
+    }
+
+    /**
+     * write the manifest of all feeds written or skipped by this writer
+     *
+     * @throws IOException if the manifest cannot be written
+     */
+    public void finish() throws IOException {
+        // written without the timestamp of Properties.store, so that it only changes with the feeds
+        StringBuilder manifestContent = new StringBuilder();
+        for (Map.Entry<String, String> feed : this.updated.entrySet())
+            manifestContent.append(feed.getKey()).append('=').append(feed.getValue()).append('\n');
+        this.output.write(MANIFEST, ByteBuffer.wrap(manifestContent.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public int getFeedsWritten() {
+        return this.feedsWritten;
+    }
+
+    public int getFeedsUnchanged() {
+        return this.feedsUnchanged;
+    }
+
+    private byte[] render(String feedPath, String title, String pagePath, List<Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(bytes, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("feed");
+            xml.writeDefaultNamespace(NAMESPACE);
+            xml.writeCharacters("\n");
+            writeElement(xml, "id", this.siteUrl + pagePath);
+            writeElement(xml, "title", title);
+            writeElement(xml, "updated", formatDate(newest(entries)));
+            writeLink(xml, "self", this.siteUrl + "/" + feedPath);
+            writeLink(xml, "alternate", this.siteUrl + pagePath);
+            xml.writeStartElement("author");
+            xml.writeCharacters("\n");
+            writeElement(xml, "name", this.author);
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            for (Entry entry : entries) {
+                xml.writeStartElement("entry");
+                xml.writeCharacters("\n");
+                writeElement(xml, "id", this.siteUrl + entry.pagePath());
+                writeElement(xml, "title", entry.title());
+                writeLink(xml, "alternate", this.siteUrl + entry.pagePath());
+                writeElement(xml, "published", formatDate(entry.published()));
+                writeElement(xml, "updated", formatDate(entry.updated()));
+                xml.writeStartElement("summary");
+                xml.writeAttribute("type", "html");
+                xml.writeCharacters(entry.summary().get());
+                xml.writeEndElement();
+                xml.writeCharacters("\n");
+                xml.writeEndElement();
+                xml.writeCharacters("\n");
+            }
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot write feed " + feedPath, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeElement(XMLStreamWriter xml, String name, String text) throws XMLStreamException {
+        xml.writeStartElement(name);
+        xml.writeCharacters(text);
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+
+    private static void writeLink(XMLStreamWriter xml, String rel, String href) throws XMLStreamException {
+        xml.writeEmptyElement("link");
+        xml.writeAttribute("rel", rel);
+        xml.writeAttribute("href", href);
+        xml.writeCharacters("\n");
+    }
+
+    private String digest(String title, String pagePath, List<Entry> entries) {
+        MessageDigest digest = ContentHash.newDigest();
+        digest.update((this.siteUrl + "\n" + this.author + "\n" + title + "\n" + pagePath)
+                .getBytes(StandardCharsets.UTF_8));
+        for (Entry entry : entries)
+            digest.update(("\n" + entry.pagePath() + "\t" + entry.title() + "\t" + formatDate(entry.published())
+                    + "\t" + formatDate(entry.updated())).getBytes(StandardCharsets.UTF_8));
+        return ContentHash.toHex(digest);
+    }
+
+    private static LocalDateTime newest(List<Entry> entries) {
+        return entries.stream().map(Entry::updated).max(Comparator.naturalOrder())
+                .orElse(LocalDateTime.of(1970, 1, 1, 0, 0));
+    }
+
+    /**
+     * RFC 3339 date with the offset of the local time zone, as expected by Atom
+     */
+    private static String formatDate(LocalDateTime date) {
+        return date.truncatedTo(ChronoUnit.SECONDS).atZone(ZoneId.systemDefault()).toOffsetDateTime()
+                .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+    }
+}
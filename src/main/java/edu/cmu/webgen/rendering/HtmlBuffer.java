@@ -0,0 +1,151 @@
+package edu.cmu.webgen.rendering;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Growable character buffer used as target for rendering.
+ * <p>
+ * In contrast to {@link java.io.StringWriter} the buffer is not synchronized and its
+ * content can be copied into another writer without creating an intermediate String.
+ * Buffers are pooled per thread: obtain one with {@link #acquire()} and return it to
+ * the pool by closing it, ideally with try-with-resources.
+ */
+public final class HtmlBuffer extends Writer implements HtmlSink {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    // buffers that grew beyond this size are shrunk before returning them to the pool
+    private static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+    private static final ThreadLocal<ArrayDeque<HtmlBuffer>> pool = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private char[] chars = new char[INITIAL_CAPACITY];
+    private int length = 0;
+    private boolean inUse = false;
+
+    private HtmlBuffer() {
+    }
+
+    /**
+     * take an empty buffer from the pool of the current thread
+     *
+     * @return an empty buffer, to be closed after use
+     */
+    public static HtmlBuffer acquire() {
+        HtmlBuffer buffer = pool.get().poll();
+        if (buffer == null)
+            buffer = new HtmlBuffer();
+        buffer.inUse = true;
+        return buffer;
+    }
+
+    private void ensureCapacity(int additional) {
+        int required = this.length + additional;
+        if (required > this.chars.length)
+            this.chars = Arrays.copyOf(this.chars, Math.max(required, this.chars.length * 2));
+    }
+
+    @Override
+    public void write(int c) {
+        ensureCapacity(1);
+        this.chars[this.length++] = (char) c;
+    }
+
+    @Override
+    public void write(String s) {
+        write(s, 0, s.length());
+    }
+
+    @Override
+    public void write(String s, int off, int len) {
+        ensureCapacity(len);
+        s.getChars(off, off + len, this.chars, this.length);
+        this.length += len;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(cbuf, off, this.chars, this.length, len);
+        this.length += len;
+    }
+
+    @Override
+    public HtmlBuffer append(CharSequence csq) {
+        String s = String.valueOf(csq);
+        write(s, 0, s.length());
+        return this;
+    }
+
+    @Override
+    public HtmlBuffer append(char c) {
+        write(c);
+        return this;
+    }
+
+    /**
+     * number of characters in the buffer
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * direct access to the buffered characters, valid up to {@link #length()}
+     * and only until the next write
+     */
+    public char[] chars() {
+        return this.chars;
+    }
+
+    /**
+     * copy the content of this buffer into a writer
+     *
+     * @param out target writer
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Writer out) throws IOException {
+        out.write(this.chars, 0, this.length);
+    }
+
+    /**
+     * copy the content of this buffer into an appendable
+     *
+     * @param out target
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Appendable out) throws IOException {
+        out.append(CharBuffer.wrap(this.chars, 0, this.length));
+    }
+
+    /**
+     * discard the content of this buffer
+     */
+    public void reset() {
+        this.length = 0;
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.chars, 0, this.length);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * returns the buffer to the pool of the current thread
+     */
+    @Override
+    public void close() {
+        if (!this.inUse) return;
+        this.inUse = false;
+        this.length = 0;
+        if (this.chars.length > MAX_POOLED_CAPACITY)
+            this.chars = new char[INITIAL_CAPACITY];
+        pool.get().push(this);
+    }
+}
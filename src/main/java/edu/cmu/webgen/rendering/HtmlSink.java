@@ -0,0 +1,34 @@
+package edu.cmu.webgen.rendering;
+
+/**
+ * Target into which HTML output is rendered.
+ * <p>
+ * Unlike {@link java.io.Writer} the methods do not throw checked exceptions, so that
+ * the document tree in {@link edu.cmu.webgen.project.FormattedTextDocument} can render
+ * into it directly.
+ */
+public interface HtmlSink {
+
+    /**
+     * write a single character
+     *
+     * @param c the character
+     */
+    void write(int c);
+
+    /**
+     * write a string
+     *
+     * @param s the string
+     */
+    void write(String s);
+
+    /**
+     * write a part of a string
+     *
+     * @param s   the string
+     * @param off index of the first character to write
+     * @param len number of characters to write
+     */
+    void write(String s, int off, int len);
+}
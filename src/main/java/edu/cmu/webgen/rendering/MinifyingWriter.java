@@ -0,0 +1,217 @@
+package edu.cmu.webgen.rendering;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Writer that removes redundant whitespace and comments from HTML while it is written.
+ * <p>
+ * The writer is a state machine over the characters passing through; it only remembers the
+ * few characters needed to recognize tags and comments and never buffers a page. Outside of
+ * tags, runs of whitespace are collapsed into a single character (a newline if the run contained
+ * one, a space otherwise), which does not change how the page is displayed. Comments are removed
+ * except for conditional comments. The content of {@code pre}, {@code textarea}, {@code script}
+ * and {@code style} elements is passed through unchanged.
+ * <p>
+ * Call {@link #finish()} after the last write to emit pending characters.
+ */
+public class MinifyingWriter extends Writer {
+
+    private static final Set<String> RAW_ELEMENTS = Set.of("pre", "textarea", "script", "style");
+    private static final String COMMENT_START = "<!--";
+    // longer tag names are never raw elements, so they are not collected
+    private static final int MAX_TAG_START = 16;
+
+    private enum State {TEXT, TAG_START, TAG, COMMENT_CHECK, COMMENT, CONDITIONAL_COMMENT, RAW}
+
+    private final Writer out;
+    private State state = State.TEXT;
+    // pending collapsed whitespace, 0 if none
+    private char pendingSpace = 0;
+    // characters of a tag start ("<name") not yet written
+    private final StringBuilder tagStart = new StringBuilder(MAX_TAG_START);
+    private String tagName = "";
+    private char quote = 0;
+    private int dashes = 0;
+    // closing tag of the current raw element and how much of it was seen
+    private String rawEnd = "";
+    private int rawEndMatched = 0;
+    private long bytesSaved = 0;
+
+    public MinifyingWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        process((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++)
+            process(cbuf[i]);
+    }
+
+    @Override
+    public void write(String s, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++)
+            process(s.charAt(i));
+    }
+
+    private void process(char c) throws IOException {
+        switch (this.state) {
+            case TEXT -> {
+                if (Character.isWhitespace(c)) {
+                    collapse(c);
+                } else if (c == '<') {
+                    // pending whitespace is kept until it is known whether a comment starts
+                    this.tagStart.setLength(0);
+                    this.tagStart.append(c);
+                    this.state = State.TAG_START;
+                } else {
+                    flushSpace();
+                    this.out.write(c);
+                }
+            }
+            case TAG_START -> {
+                this.tagStart.append(c);
+                if (COMMENT_START.contentEquals(this.tagStart)) {
+                    this.dashes = 0;
+                    this.state = State.COMMENT_CHECK;
+                } else if (!COMMENT_START.startsWith(this.tagStart.toString())
+                        && (Character.isWhitespace(c) || c == '>' || (c == '/' && this.tagStart.length() > 2)
+                        || this.tagStart.length() >= MAX_TAG_START)) {
+                    this.tagName = this.tagStart.substring(1, this.tagStart.length() - 1).toLowerCase(Locale.ROOT);
+                    this.tagStart.setLength(this.tagStart.length() - 1);
+                    flushSpace();
+                    this.out.append(this.tagStart);
+                    this.state = State.TAG;
+                    process(c);
+                }
+            }
+            case TAG -> {
+                if (this.quote != 0) {
+                    if (c == this.quote)
+                        this.quote = 0;
+                    this.out.write(c);
+                } else if (Character.isWhitespace(c)) {
+                    collapse(' ');
+                } else if (c == '>') {
+                    // whitespace before the end of a tag is not needed
+                    if (this.pendingSpace != 0) {
+                        this.bytesSaved++;
+                        this.pendingSpace = 0;
+                    }
+                    this.out.write(c);
+                    startContent();
+                } else {
+                    if (c == '"' || c == '\'')
+                        this.quote = c;
+                    flushSpace();
+                    this.out.write(c);
+                }
+            }
+            case COMMENT_CHECK -> {
+                if (c == '[') {
+                    flushSpace();
+                    this.out.write(COMMENT_START);
+                    this.out.write(c);
+                    this.state = State.CONDITIONAL_COMMENT;
+                } else {
+                    this.bytesSaved += COMMENT_START.length();
+                    this.state = State.COMMENT;
+                    process(c);
+                }
+            }
+            case COMMENT, CONDITIONAL_COMMENT -> {
+                boolean keep = this.state == State.CONDITIONAL_COMMENT;
+                if (keep)
+                    this.out.write(c);
+                else
+                    this.bytesSaved += utf8Length(c);
+                if (c == '>' && this.dashes >= 2)
+                    this.state = State.TEXT;
+                this.dashes = c == '-' ? this.dashes + 1 : 0;
+            }
+            case RAW -> {
+                this.out.write(c);
+                if (Character.toLowerCase(c) == this.rawEnd.charAt(this.rawEndMatched))
+                    this.rawEndMatched++;
+                else
+                    this.rawEndMatched = c == '<' ? 1 : 0;
+                if (this.rawEndMatched == this.rawEnd.length()) {
+                    // the rest of the closing tag is handled like any tag
+                    this.tagName = this.rawEnd.substring(1);
+                    this.state = State.TAG;
+                }
+            }
+        }
+    }
+
+    /**
+     * choose the state after the end of a tag
+     */
+    private void startContent() {
+        this.state = State.TEXT;
+        if (RAW_ELEMENTS.contains(this.tagName)) {
+            this.rawEnd = "</" + this.tagName;
+            this.rawEndMatched = 0;
+            this.state = State.RAW;
+        }
+    }
+
+    private void collapse(char c) {
+        if (this.pendingSpace != 0)
+            this.bytesSaved++;
+        if (this.pendingSpace != '\n')
+            this.pendingSpace = c == '\n' ? '\n' : ' ';
+    }
+
+    private void flushSpace() throws IOException {
+        if (this.pendingSpace != 0) {
+            this.out.write(this.pendingSpace);
+            this.pendingSpace = 0;
+        }
+    }
+
+    private static int utf8Length(char c) {
+        if (c < 0x80) return 1;
+        if (c < 0x800 || Character.isSurrogate(c)) return 2;
+        return 3;
+    }
+
+    /**
+     * write characters that are still pending at the end of the output
+     *
+     * @throws IOException if writing fails
+     */
+    public void finish() throws IOException {
+        flushSpace();
+        if (this.state == State.TAG_START)
+            this.out.append(this.tagStart);
+        else if (this.state == State.COMMENT_CHECK)
+            this.out.write(COMMENT_START);
+        this.state = State.TEXT;
+    }
+
+    /**
+     * number of bytes (in UTF-8) removed from the output so far
+     */
+    public long getBytesSaved() {
+        return this.bytesSaved;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        this.out.close();
+    }
+}
@@ -0,0 +1,46 @@
+package edu.cmu.webgen.rendering;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Per-build cache of the preview snippets of entries.
+ * <p>
+ * The preview of an entry is shown on the homepage, on the article list, on each of
+ * its topic pages and on the page of its parent entry. Creating the preview walks the
+ * entry's documents and escapes their text, so it is done once per entry and relative
+ * path and reused by every listing.
+ */
+class PreviewCache {
+
+    private final Map<Key, CachedPreview> previews = new HashMap<>();
+
+    /**
+     * returns the cached preview of an entry, creating it on first use
+     *
+     * @param entry   the article, subarticle or subsubarticle
+     * @param relPath relative path of the page that shows the preview
+     * @param create  creates the preview if it is not cached yet
+     * @return the cached preview
+     */
+    CachedPreview get(Object entry, String relPath, Supplier<CachedPreview> create) {
+        Key key = new Key(entry, relPath);
+        CachedPreview preview = this.previews.get(key);
+        if (preview == null) {
+            preview = create.get();
+            this.previews.put(key, preview);
+        }
+        return preview;
+    }
+
+    /**
+     * rendered preview html and formatted published date of an entry
+     */
+    record CachedPreview(String preview, String date) {
+    }
+
+    // entries do not override equals, so they are compared by identity
+    private record Key(Object entry, String relPath) {
+    }
+}
@@ -2,11 +2,20 @@ package edu.cmu.webgen.rendering;
 
 import edu.cmu.webgen.WebGen;
 import edu.cmu.webgen.WebGenArgs;
+import edu.cmu.webgen.output.FileSystemSink;
+import edu.cmu.webgen.output.HashingSink;
+import edu.cmu.webgen.output.ImageDerivatives;
+import edu.cmu.webgen.output.MediaPublisher;
+import edu.cmu.webgen.output.OutputSink;
 import edu.cmu.webgen.project.*;
 import edu.cmu.webgen.rendering.data.*;
 import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.function.Function;
@@ -27,21 +36,103 @@ public class Renderer {
     public static final String ARTICLES_ADDRESS = "/articles/";
     public static final String ENTRY_ADDRESS = "/p/";
     public static final String HOME_ADDRESS = "/";
+    public static final String SITE_FEED = "atom.xml";
     private final SiteLink HOME_LINK = new SiteLink(createURL(HOME_ADDRESS), "Home");
     private final SiteLink ARTICLES_LINK = new SiteLink(createURL(ARTICLES_ADDRESS), "Articles");
     private final SiteLink EVENTS_LINK = new SiteLink(createURL(EVENTS_ADDRESS), "Events");
     private final SiteLink TOPICS_LINK = new SiteLink(createURL(TOPICS_ADDRESS), "Topics");
 
-    public final File targetDirectory;
+    public final OutputSink output;
     public final TemplateEngine templateEngine;
     public final String siteGenerationTime;
     public final WebGenArgs.ArticleSorting sorting;
+    public final boolean reproducible;
+    public final boolean anchoredPagination;
+    public final @Nullable WebGenArgs.Shard shard;
+    public final boolean inlineCriticalCss;
+    public final @Nullable File cacheDirectory;
+    public final boolean responsiveImages;
+    public final boolean youtubeFacade;
+    public final @Nullable String siteUrl;
+    public final int feedSize;
     public List<SiteLink> headers = null;
+    private final PreviewCache previewCache = new PreviewCache();
+    private final Map<String, SiteData> siteDataCache = new HashMap<>();
+    private final Set<String> plannedPages = new LinkedHashSet<>();
+    private final Map<String, LocalDateTime> pageUpdates = new HashMap<>();
+    private final List<String> renderedPages = new ArrayList<>();
+    private final List<String> outputPaths = new ArrayList<>();
+    private boolean planOnly = false;
+    private @Nullable String onlyPage = null;
+    private @Nullable Map<String, PageSource> pageSources = null;
+    private @Nullable PageSource currentSource = null;
+    private @Nullable CriticalCss criticalCss = null;
+    private final Map<String, ByteBuffer> criticalChromeCache = new HashMap<>();
+    private final Map<File, String> mediaPaths = new HashMap<>();
+    private @Nullable MediaPublisher mediaPublisher = null;
+    private final Map<File, List<ImageDerivatives.Derivative>> imageVersions = new HashMap<>();
+    private final Map<String, String> youtubeFacades = new HashMap<>();
+    private @Nullable Map<Topic, List<Object>> articlesByTopic = null;
+    private final @Nullable HashingSink hashes;
 
     public Renderer(File targetDirectory, WebGenArgs.ArticleSorting sorting, TemplateEngine templateEngine) {
-        this.targetDirectory = targetDirectory;
+        this(new FileSystemSink(targetDirectory), sorting, false, false, null, false, null, false, false, null, 0,
+                false, templateEngine);
+    }
+
+    public Renderer(File targetDirectory, WebGenArgs options, TemplateEngine templateEngine) {
+        this(new FileSystemSink(targetDirectory), options, templateEngine);
+    }
+
+    public Renderer(OutputSink output, WebGenArgs options, TemplateEngine templateEngine) {
+        this(output, options.getArticleSorting(), options.isReproducible(), options.isAnchoredPagination(),
+                options.getShard(), options.isInlineCriticalCss(), options.getCacheDirectory(),
+                options.isResponsiveImages(), options.isYoutubeFacade(), options.getSiteUrl(), options.getFeedSize(), options.isOffline(),
+                templateEngine);
+    }
+
+    /**
+     * @param output       receives the generated files
+     * @param reproducible if set, pages show the last update of their inputs instead of the time
+     *                     of generation, so that rendering the same input twice gives identical output
+     * @param anchoredPagination if set, article lists are ordered by publication date and their pages are
+     *                           numbered from the oldest article, see {@link WebGen#paginateContentAnchored}
+     * @param shard              if not null, only the pages of this shard are rendered
+     * @param inlineCriticalCss  if set, the style rules a page can use are inlined into its head and the
+     *                           stylesheet is loaded asynchronously, see {@link CriticalCss}
+     * @param cacheDirectory     directory caching hashes of media files and smaller versions of images
+     *                           between builds, see {@link MediaPublisher}; null to cache nothing
+     * @param responsiveImages   if set and there is a cache directory, smaller versions of images are
+     *                           created and cached, see {@link ImageDerivatives}
+     * @param youtubeFacade       if set, YouTube videos are shown as a thumbnail that loads the player
+     *                            when clicked
+     * @param siteUrl             absolute URL of the root of the site; if not null, a sitemap is
+     *                            written, see {@link SitemapWriter}
+     * @param feedSize            number of entries of the Atom feeds of the site and of each topic, 0 to
+     *                            write no feeds; feeds are only written if the site URL is known
+     * @param offline             if set, a service worker keeps the homepage, the stylesheet and the
+     *                            newest articles available offline, see {@link ServiceWorker}; the
+     *                            service worker is not written by sharded builds, and pages should be
+     *                            reproducible so that unchanged pages keep their revision
+     */
+    public Renderer(OutputSink output, WebGenArgs.ArticleSorting sorting, boolean reproducible,
+                    boolean anchoredPagination, @Nullable WebGenArgs.Shard shard, boolean inlineCriticalCss,
+                    @Nullable File cacheDirectory, boolean responsiveImages, boolean youtubeFacade, @Nullable String siteUrl,
+                    int feedSize, boolean offline, TemplateEngine templateEngine) {
+        // the precache manifest of the service worker lists files with a hash of their content
+        this.hashes = offline && shard == null ? new HashingSink(output) : null;
+        this.output = this.hashes != null ? this.hashes : output;
         this.templateEngine = templateEngine;
         this.sorting = sorting;
+        this.reproducible = reproducible;
+        this.anchoredPagination = anchoredPagination;
+        this.shard = shard;
+        this.inlineCriticalCss = inlineCriticalCss;
+        this.cacheDirectory = cacheDirectory;
+        this.responsiveImages = responsiveImages;
+        this.youtubeFacade = youtubeFacade;
+        this.siteUrl = siteUrl;
+        this.feedSize = feedSize;
         this.siteGenerationTime = WebGen.readableFormat(LocalDateTime.now());
     }
 
@@ -54,6 +145,20 @@ public class Renderer {
      * @return returns a Pagination object that can be rendered
      */
     private static Pagination createPagination(int selectedPageIdx, int pageCount, Function<Integer, SiteURL> genLink) {
+        return createPagination(selectedPageIdx, pageCount, genLink, (i) -> "" + (i + 1));
+    }
+
+    /**
+     * create a Pagination object with links to the different pages of a result
+     *
+     * @param selectedPageIdx index of the selected page
+     * @param pageCount       number of pages
+     * @param genLink         function to generate the link to a specific page number
+     * @param genLabel        function to generate the label of a specific page number
+     * @return returns a Pagination object that can be rendered
+     */
+    private static Pagination createPagination(int selectedPageIdx, int pageCount, Function<Integer, SiteURL> genLink,
+                                               Function<Integer, String> genLabel) {
         if (pageCount == 1)
             return new Pagination(Collections.emptyList());
 
@@ -72,15 +177,15 @@ public class Renderer {
             }
         }
         if (segmentStart != 0) {
-            links.add(List.of(new SiteLink(genLink.apply(0), "1", false)));
+            links.add(List.of(new SiteLink(genLink.apply(0), genLabel.apply(0), false)));
         }
         List<SiteLink> segmentLinks = new ArrayList<>(segmentEnd - segmentStart);
         for (int idx = segmentStart; idx <= segmentEnd; idx++) {
-            segmentLinks.add(new SiteLink(genLink.apply(idx), "" + (idx + 1), selectedPageIdx == idx));
+            segmentLinks.add(new SiteLink(genLink.apply(idx), genLabel.apply(idx), selectedPageIdx == idx));
         }
         links.add(segmentLinks);
         if (segmentEnd != pageCount - 1) {
-            links.add(List.of(new SiteLink(genLink.apply(pageCount - 1), "" + pageCount,
+            links.add(List.of(new SiteLink(genLink.apply(pageCount - 1), genLabel.apply(pageCount - 1),
                     selectedPageIdx == pageCount - 1)));
         }
 
@@ -93,6 +198,63 @@ public class Renderer {
         return basePath + (page + 1) + "/";
     }
 
+    /**
+     * number of a page of an article list, used in its path and its label
+     * <p>
+     * with anchored pagination, page n holds the n-th block of entries counted from the oldest entry
+     * (see {@link WebGen#paginateContentAnchored}), so the number of every page but the newest stays
+     * the same when new entries are added; otherwise pages are numbered from the first page shown
+     *
+     * @param page      index of the page, 0 is the first page shown
+     * @param pageCount number of pages
+     * @return number of the page, starting at 1
+     */
+    public int getArticleListPageNumber(int page, int pageCount) {
+        return this.anchoredPagination ? pageCount - page : page + 1;
+    }
+
+    /**
+     * path of a page of an article list; the first page shown is at the base path, all other
+     * pages at their number, see {@link #getArticleListPageNumber}
+     *
+     * @param basePath  path of the list
+     * @param page      index of the page, 0 is the first page shown
+     * @param pageCount number of pages
+     * @return path of the page
+     */
+    public String createArticleListPath(String basePath, int page, int pageCount) {
+        assert basePath.startsWith("/");
+        if (page == 0) return basePath;
+        return basePath + getArticleListPageNumber(page, pageCount) + "/";
+    }
+
+    private Pagination createArticleListPagination(String basePath, int page, int pageCount) {
+        return createPagination(page, pageCount, (i) -> createURL(createArticleListPath(basePath, i, pageCount)),
+                (i) -> "" + getArticleListPageNumber(i, pageCount));
+    }
+
+    /**
+     * split entries of an article list into pages
+     */
+    private List<List<Object>> paginateArticles(List<Object> entries) {
+        if (!this.anchoredPagination)
+            return WebGen.paginateContent(entries.iterator(), 5);
+        Map<Object, LocalDateTime> publishedDates = new IdentityHashMap<>();
+        for (Object entry : entries)
+            publishedDates.put(entry, getPublishedDate(entry));
+        List<Object> oldestFirst = new ArrayList<>(entries);
+        oldestFirst.sort(Comparator.comparing(publishedDates::get));
+        return WebGen.paginateContentAnchored(oldestFirst, 5);
+    }
+
+    private LocalDateTime getPublishedDate(Object entry) {
+        if (entry instanceof Article a)
+            return a.getPublishedDate();
+        if (entry instanceof SubArticle sa)
+            return sa.getPublishedDate();
+        return ((SubSubArticle) entry).getPublishedDate();
+    }
+
     /**
      * returns relative path back to / from the current path
      *
@@ -122,30 +284,283 @@ public class Renderer {
 
     /**
      * create all the files for this project
+     * <p>
+     * in a sharded build only the pages of the shard are rendered, the static elements are
+     * written by the first shard, and every shard writes a manifest of its pages; since all pages
+     * are planned by every shard, the first shard also writes the sitemap and feeds of the whole site
      */
     public void renderProject(Project project) throws IOException {
+        createPageDirectories(planPages(project));
+
+        //basic static elements, first because pages refer to their published names
+        copyCSS();
+        publishMedia(project);
+
+        renderPages(project);
+
+        if (this.siteUrl != null && (this.shard == null || this.shard.index() == 0))
+            new SitemapWriter(this.output, this.siteUrl, this.output.getRoot())
+                    .write(this.plannedPages, this.pageUpdates);
+        if (hasFeeds() && (this.shard == null || this.shard.index() == 0))
+            renderFeeds(project);
+        if (this.hashes != null)
+            renderServiceWorker(project);
+
+        if (this.shard == null || this.shard.index() == 0) {
+            removeStaleAssets();
+            if (this.templateEngine.getAssets().isFingerprint())
+                this.templateEngine.write(this.output, AssetManifest.MANIFEST_PATH,
+                        ByteBuffer.wrap(this.templateEngine.getAssets().toJson()));
+        }
+
+        if (this.shard != null)
+            ShardManifest.write(this.output, this.shard, this.renderedPages);
+    }
+
+    /**
+     * remove the assets listed in the asset manifest of the previous build that are no longer
+     * published, such as the stylesheet under the hash of its old content
+     */
+    private void removeStaleAssets() throws IOException {
+        File root = this.output.getRoot();
+        File previousManifest = root == null ? null : new File(root, AssetManifest.MANIFEST_PATH);
+        if (previousManifest == null || !previousManifest.isFile())
+            return;
+        Map<String, String> previous;
+        try {
+            previous = AssetManifest.parseJson(Files.readString(previousManifest.toPath()));
+        } catch (IOException e) {
+            System.err.println("Cannot read the previous asset manifest, outdated assets are not removed: "
+                    + e.getMessage());
+            return;
+        }
+        Set<String> published = this.templateEngine.getAssets().getPublishedPaths();
+        for (String path : previous.values())
+            // the manifest is only trusted with paths inside the site
+            if (!published.contains(path) && !path.startsWith("/") && !Arrays.asList(path.split("/")).contains(".."))
+                this.output.delete(path);
+        if (!this.templateEngine.getAssets().isFingerprint())
+            this.output.delete(AssetManifest.MANIFEST_PATH);
+    }
+
+    /**
+     * write the service worker and its precache manifest, which lists the homepage, the stylesheet
+     * and the newest articles with the hashes of their rendered content; the manifest of the
+     * previous build is removed once the new script refers to the new manifest
+     */
+    private void renderServiceWorker(Project project) throws IOException {
+        assert this.hashes != null;
+        List<String> paths = new ArrayList<>();
+        paths.add(getOutputPath(HOME_ADDRESS));
+        paths.add(this.templateEngine.getAssets().resolve("css/main.css"));
+        project.getArticles().stream()
+                .sorted(Comparator.comparing(Article::getPublishedDate).reversed())
+                .limit(ServiceWorker.PRECACHED_ARTICLES)
+                .forEach(article -> paths.add(getOutputPath(getArticlePath(article))));
+        List<ServiceWorker.Entry> entries = new ArrayList<>();
+        for (String path : paths) {
+            String hash = this.hashes.getHash(path);
+            if (hash != null)
+                entries.add(new ServiceWorker.Entry(path, hash));
+        }
+        String manifestPath = ServiceWorker.getManifestPath(entries);
+        this.templateEngine.write(this.output, manifestPath, ByteBuffer.wrap(ServiceWorker.manifestJson(entries)));
+        this.templateEngine.write(this.output, ServiceWorker.SCRIPT_PATH,
+                ByteBuffer.wrap(ServiceWorker.script(manifestPath)));
+        this.outputPaths.add(manifestPath);
+        this.outputPaths.add(ServiceWorker.SCRIPT_PATH);
+
+        File root = this.output.getRoot();
+        if (root == null)
+            return;
+        File previousState = new File(root, ServiceWorker.STATE_PATH);
+        if (previousState.isFile()) {
+            String previousManifest = Files.readString(previousState.toPath(), StandardCharsets.UTF_8).trim();
+            // the state file is only trusted with names of precache manifests
+            if (!previousManifest.equals(manifestPath) && ServiceWorker.isManifestPath(previousManifest))
+                this.output.delete(previousManifest);
+        }
+        this.output.write(ServiceWorker.STATE_PATH,
+                ByteBuffer.wrap((manifestPath + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * collect the paths of all pages of the project without rendering them
+     *
+     * @param project the project
+     * @return paths of all pages
+     */
+    public Set<String> planPages(Project project) throws IOException {
+        assignIds(project);
+        this.planOnly = true;
+        try {
+            renderPages(project);
+        } finally {
+            this.planOnly = false;
+        }
+        return new LinkedHashSet<>(this.plannedPages);
+    }
+
+    /**
+     * renders the page or pages of one entry, topic or list
+     */
+    @FunctionalInterface
+    private interface PageSource {
+        void render() throws IOException;
+    }
+
+    /**
+     * render the pages of a source and, while preparing single pages, remember which pages it
+     * renders, so that {@link #renderSinglePage} only renders the source of the requested page
+     */
+    private void renderFrom(PageSource source) throws IOException {
+        PageSource outer = this.currentSource;
+        this.currentSource = source;
+        try {
+            source.render();
+        } finally {
+            this.currentSource = outer;
+        }
+    }
+
+    /**
+     * prepare rendering single pages with {@link #renderSinglePage}: plans all pages and publishes
+     * the stylesheet and media, which pages refer to, and the sitemap and feeds if the site URL is known
+     *
+     * @param project the project
+     */
+    public void prepareSinglePages(Project project) throws IOException {
+        this.pageSources = new HashMap<>();
+        planPages(project);
+        copyCSS();
+        publishMedia(project);
+        if (this.siteUrl != null)
+            new SitemapWriter(this.output, this.siteUrl, this.output.getRoot())
+                    .write(this.plannedPages, this.pageUpdates);
+        if (hasFeeds())
+            renderFeeds(project);
+    }
+
+    /**
+     * render a single page, for example to preview it; only the entry, topic or list the page
+     * belongs to is rendered, and pages are selected like shards select their pages, so the page
+     * is identical to the page of a full rendering with the same options
+     *
+     * @param project  the project, prepared with {@link #prepareSinglePages}
+     * @param pagePath path of the page (starts and ends with a "/")
+     * @return path of the written file relative to the root of the site, null if the project has no such page
+     */
+    public @Nullable String renderSinglePage(Project project, String pagePath) throws IOException {
+        PageSource source = this.pageSources == null ? null : this.pageSources.get(pagePath);
+        if (source == null)
+            return null;
+        this.onlyPage = pagePath;
+        try {
+            source.render();
+        } finally {
+            this.onlyPage = null;
+            // single pages are rendered repeatedly, they are not collected
+            this.renderedPages.clear();
+            this.outputPaths.clear();
+        }
+        return getOutputPath(pagePath);
+    }
+
+    /**
+     * create the directories of all pages this renderer writes in one batch
+     *
+     * @param pagePaths paths of all pages of the project
+     */
+    private void createPageDirectories(Set<String> pagePaths) throws IOException {
+        List<String> directories = new ArrayList<>();
+        for (String pagePath : pagePaths)
+            if (this.shard == null || this.shard.contains(pagePath))
+                directories.add(pagePath.substring(1));
+        this.output.createDirectories(directories);
+    }
+
+    /**
+     * path of the file of a page in the output
+     *
+     * @param pagePath path of the page (starts and ends with a "/")
+     * @return path of the page's index.html relative to the root of the site
+     */
+    public String getOutputPath(String pagePath) {
+        assert pagePath.startsWith("/");
+        assert pagePath.endsWith("/");
+        return pagePath.substring(1) + "index.html";
+    }
+
+    /**
+     * write a page, starting with the pre-rendered static part of its frame
+     */
+    private void renderPage(Page page, String outputPath) throws IOException {
+        this.templateEngine.render(page.getTemplate(), page, getChromeHeader(page), this.output, outputPath);
+        this.outputPaths.add(outputPath);
+    }
+
+    /**
+     * paths of all files written by {@link #renderProject}, relative to the root of the site
+     */
+    public List<String> getOutputPaths() {
+        return Collections.unmodifiableList(this.outputPaths);
+    }
+
+    /**
+     * ids are assigned on first use and made unique with a counter, so they are assigned
+     * in a fixed order before rendering; this way all shards agree on them
+     */
+    private void assignIds(Project project) {
+        for (Object entry : findAllArticles(project)) {
+            if (entry instanceof Article a) a.getId();
+            if (entry instanceof SubArticle sa) sa.getId();
+            if (entry instanceof SubSubArticle ssa) ssa.getId();
+        }
+    }
+
+    /**
+     * decides whether a page is rendered and records its path; render methods call this before
+     * creating the content of a page
+     *
+     * @param pagePath   path of the page
+     * @param lastUpdate most recent update of the entries shown on the page, null if there are none
+     * @return true if the page should be rendered
+     */
+    private boolean claimPage(String pagePath, @Nullable LocalDateTime lastUpdate) {
+        this.plannedPages.add(pagePath);
+        if (this.planOnly && this.pageSources != null && this.currentSource != null)
+            this.pageSources.put(pagePath, this.currentSource);
+        if (lastUpdate != null)
+            this.pageUpdates.put(pagePath, lastUpdate);
+        if (this.planOnly)
+            return false;
+        if (this.onlyPage != null && !this.onlyPage.equals(pagePath))
+            return false;
+        if (this.shard != null && !this.shard.contains(pagePath))
+            return false;
+        this.renderedPages.add(pagePath);
+        return true;
+    }
+
+    private void renderPages(Project project) throws IOException {
         // render main page
-        renderHomepage(project);
+        renderFrom(() -> renderHomepage(project));
 
         //render each entry
         renderArticles(project);
 //        renderEvents(project);
 
         //lists
-        renderArticleList(project);
+        renderFrom(() -> renderArticleList(project));
 //        renderEventList(project);
-        renderTopicList(project);
+        renderFrom(() -> renderTopicList(project));
 
         //each topic has a page
         renderTopics(project);
-
-        //basic static elements
-        copyCSS();
     }
 
     public void renderHomepage(Project project) throws IOException {
-        String relPath = getRelPath(HOME_ADDRESS);
-        List<ArticlePreview> articles = project.getArticles().stream().sorted((o1, o2) -> {
+        List<Article> homepageArticles = project.getArticles().stream().sorted((o1, o2) -> {
                     if (this.sorting == WebGenArgs.ArticleSorting.PINNED) {
                         if (o1.isArticlePinned() && !o2.isArticlePinned()) return -1;
                         if (!o1.isArticlePinned() && o2.isArticlePinned()) return 1;
@@ -160,19 +575,22 @@ public class Renderer {
                         if (!o1.getLastUpdate().equals(o2.getLastUpdate()))
                             return o1.getLastUpdate().compareTo(o2.getLastUpdate());
                     return o1.getTitle().compareTo(o2.getTitle());
-                }).limit(5).
+                }).limit(5).collect(Collectors.toList());
+        LocalDateTime lastUpdate = newestUpdate(homepageArticles);
+        if (!claimPage(HOME_ADDRESS, lastUpdate)) return;
+        String relPath = getRelPath(HOME_ADDRESS);
+        List<ArticlePreview> articles = homepageArticles.stream().
                 map(a -> renderArticlePreview(a, relPath, "")).collect(Collectors.toList());
 //        List<Website.EventListing> upcomingEvents = genEventListing(project.getUpcomingEvents(5));
         List<EventListing> upcomingEvents = Collections.emptyList(); // not yet implemented
-        SiteData siteData = genSiteData(project, relPath);
+        SiteData siteData = genSiteData(project, relPath, lastUpdate);
         Homepage homepage = new Homepage(
                 siteData,
                 articles,
                 upcomingEvents,
                 ARTICLES_LINK.getAddress(),
                 EVENTS_LINK.getAddress());
-        File targetFile = new File(this.targetDirectory, "index.html");
-        this.templateEngine.render(homepage.getTemplate(), homepage, targetFile);
+        renderPage(homepage, getOutputPath(HOME_ADDRESS));
     }
 
 
@@ -189,21 +607,31 @@ public class Renderer {
 //        return result;
     }
 
+    /**
+     * publish the stylesheet; in a sharded build only the first shard writes it, but all
+     * shards register it to link its published name
+     */
     public void copyCSS() throws IOException {
-        File cssDir = new File(targetDirectory, "css");
-        cssDir.mkdir();
-        InputStream source = this.getClass().getResourceAsStream("/css/main.css");
-        OutputStream out = new FileOutputStream(new File(cssDir, "main.css"));
-        IOUtils.copy(source, out);
+        byte[] css;
+        try (InputStream source = this.getClass().getResourceAsStream("/css/main.css")) {
+            css = IOUtils.toByteArray(source);
+        }
+        String path = this.templateEngine.getAssets().register("css/main.css", css);
+        if (this.inlineCriticalCss)
+            this.criticalCss = new CriticalCss(new String(css, StandardCharsets.UTF_8));
+        if (this.shard != null && this.shard.index() != 0)
+            return;
+        this.templateEngine.write(this.output, path, ByteBuffer.wrap(css));
+        this.outputPaths.add(path);
     }
 
     public void renderArticles(Project project) throws IOException {
         for (Article article : project.getArticles()) {
-            renderArticle(project, article);
+            renderFrom(() -> renderArticle(project, article));
             for (SubArticle subArticle : article.getInnerArticles()) {
-                renderSubArticle(project, subArticle);
+                renderFrom(() -> renderSubArticle(project, subArticle));
                 for (SubSubArticle subSubArticle : subArticle.getInnerArticles()) {
-                    renderSubSubArticle(project, subSubArticle);
+                    renderFrom(() -> renderSubSubArticle(project, subSubArticle));
                 }
             }
         }
@@ -211,8 +639,9 @@ public class Renderer {
 
     public void renderArticle(Project project, Article article) throws IOException {
         String pagePath = getArticlePath(article);
+        if (!claimPage(pagePath, article.getLastUpdate())) return;
         String relPath = getRelPath(pagePath);
-        SiteData siteData = genSiteData(project, relPath);
+        SiteData siteData = genSiteData(project, relPath, article.getLastUpdate());
         List<SiteLink> topics = project.getTopics(article)
                 .stream().sorted().map(this::mkTopicLink).collect(Collectors.toList());
         List<SiteLink> breadcrumbs = getBreadcrumbs(article);
@@ -224,14 +653,14 @@ public class Renderer {
                 WebGen.readableFormat(article.getPublishedDate()),
                 topics,
                 getArticleContent(article, relPath));
-        File targetFile = new File(new File(this.targetDirectory, pagePath), "index.html");
-        this.templateEngine.render(page.getTemplate(), page, targetFile);
+        renderPage(page, getOutputPath(pagePath));
     }
 
     public void renderSubArticle(Project project, SubArticle subArticle) throws IOException {
         String pagePath = getSubArticlePath(subArticle);
+        if (!claimPage(pagePath, subArticle.getLastUpdate())) return;
         String relPath = getRelPath(pagePath);
-        SiteData siteData = genSiteData(project, relPath);
+        SiteData siteData = genSiteData(project, relPath, subArticle.getLastUpdate());
         List<SiteLink> topics = project.getTopics(subArticle)
                 .stream().sorted().map(this::mkTopicLink).collect(Collectors.toList());
         List<SiteLink> breadcrumbs = getBreadcrumbs(subArticle);
@@ -243,14 +672,14 @@ public class Renderer {
                 WebGen.readableFormat(subArticle.getPublishedDate()),
                 topics,
                 getSubArticleContent(subArticle, relPath));
-        File targetFile = new File(new File(this.targetDirectory, pagePath), "index.html");
-        this.templateEngine.render(page.getTemplate(), page, targetFile);
+        renderPage(page, getOutputPath(pagePath));
     }
 
     public void renderSubSubArticle(Project project, SubSubArticle subSubArticle) throws IOException {
         String pagePath = getSubSubArticlePath(subSubArticle);
+        if (!claimPage(pagePath, subSubArticle.getLastUpdate())) return;
         String relPath = getRelPath(pagePath);
-        SiteData siteData = genSiteData(project, relPath);
+        SiteData siteData = genSiteData(project, relPath, subSubArticle.getLastUpdate());
         List<SiteLink> topics = project.getTopics(subSubArticle)
                 .stream().sorted().map(this::mkTopicLink).collect(Collectors.toList());
         List<SiteLink> breadcrumbs = getBreadcrumbs(subSubArticle);
@@ -262,8 +691,7 @@ public class Renderer {
                 WebGen.readableFormat(subSubArticle.getPublishedDate()),
                 topics,
                 getSubSubArticleContent(subSubArticle, relPath));
-        File targetFile = new File(new File(this.targetDirectory, pagePath), "index.html");
-        this.templateEngine.render(page.getTemplate(), page, targetFile);
+        renderPage(page, getOutputPath(pagePath));
     }
 
     /**
@@ -324,33 +752,149 @@ public class Renderer {
 
     /**
      * basic site information used on every page, including title and owner
+     * <p>
+     * the site data and the static part of the page frame only depend on the relative path,
+     * so they are created once per distinct relative path and reused by all pages
      *
      * @param project the project to render
      * @param relPath relative path to the current page
      * @return SiteData object
      */
-    public SiteData genSiteData(Project project, String relPath) {
+    public SiteData genSiteData(Project project, String relPath) throws IOException {
+        SiteData siteData = this.siteDataCache.get(relPath);
+        if (siteData == null) {
+            siteData = new SiteData(
+                    relPath,
+                    project.getTitle(),
+                    project.getOwnerOrg(),
+                    genHeaders(project),
+                    this.siteGenerationTime,
+                    renderChromeHeader(relPath, project.getTitle(), project.getOwnerOrg(), genHeaders(project), "",
+                            getFeedLinks(project.getTitle(), null, null)));
+            this.siteDataCache.put(relPath, siteData);
+        }
+        return siteData;
+    }
+
+    /**
+     * site information for a page; in reproducible mode the page shows the last update of
+     * its inputs instead of the time of generation
+     *
+     * @param project          the project to render
+     * @param relPath          relative path to the current page
+     * @param inputsLastUpdate most recent update of the entries shown on the page, null if there are none
+     * @return SiteData object
+     */
+    public SiteData genSiteData(Project project, String relPath, @Nullable LocalDateTime inputsLastUpdate)
+            throws IOException {
+        SiteData siteData = genSiteData(project, relPath);
+        if (!this.reproducible)
+            return siteData;
         return new SiteData(
-                relPath,
-                project.getTitle(),
-                project.getOwnerOrg(),
-                genHeaders(project),
-                this.siteGenerationTime);
+                siteData.relPath(),
+                siteData.projectTitle(),
+                siteData.organization(),
+                siteData.headers(),
+                inputsLastUpdate == null ? null : WebGen.readableFormat(inputsLastUpdate),
+                siteData.chromeHeader());
+    }
+
+    /**
+     * most recent update among articles, subarticles and subsubarticles
+     *
+     * @param entries the entries
+     * @return timestamp of the last update, null if there are no entries
+     */
+    public @Nullable LocalDateTime newestUpdate(Collection<?> entries) {
+        LocalDateTime newest = null;
+        for (Object entry : entries) {
+            LocalDateTime update = null;
+            if (entry instanceof Article a)
+                update = a.getLastUpdate();
+            if (entry instanceof SubArticle sa)
+                update = sa.getLastUpdate();
+            if (entry instanceof SubSubArticle ssa)
+                update = ssa.getLastUpdate();
+            if (update != null && (newest == null || update.isAfter(newest)))
+                newest = update;
+        }
+        return newest;
     }
 
-    public ContentFragment getSubArticleFragment(SubArticle subarticle, String relPath) throws IOException {
-        StringWriter w = new StringWriter();
-        this.templateEngine.render("article-preview",
-                renderSubArticlePreview(subarticle, relPath, "Read on: "), w);
-        return new ContentFragment(subarticle.getTitle(), w.toString());
+    /**
+     * the static part of the frame of a page; with inlined critical CSS it also depends on the
+     * page template and on topic pages it links the topic's feed, so it is cached per relative
+     * path, template and feed
+     */
+    private ByteBuffer getChromeHeader(Page page) throws IOException {
+        String topicFeed = page instanceof ArticleListPage list ? list.getFeedPath() : null;
+        if (this.criticalCss == null && topicFeed == null)
+            return page.getSiteData().chromeHeader();
+        String key = page.getRelPath() + " " + page.getTemplate() + " " + topicFeed;
+        ByteBuffer chrome = this.criticalChromeCache.get(key);
+        if (chrome == null) {
+            chrome = renderChromeHeader(page.getRelPath(), page.getProjectTitle(), page.getOrganization(),
+                    page.getHeaders(), this.criticalCss == null ? "" : this.criticalCss.forTemplate(page.getTemplate()),
+                    getFeedLinks(page.getProjectTitle(), page.getPageTitle(), topicFeed));
+            this.criticalChromeCache.put(key, chrome);
+        }
+        return chrome;
     }
 
+    /**
+     * feeds linked in the head of a page: the feed of the site and, on topic pages, the topic's feed
+     *
+     * @param projectTitle title of the site
+     * @param topicTitle   title of the topic page, null if the page is not a topic page
+     * @param topicFeed    path of the topic's feed, null if the page is not a topic page
+     * @return title and path (relative to the root of the site) of each feed
+     */
+    private List<Map<String, String>> getFeedLinks(String projectTitle, @Nullable String topicTitle,
+                                                   @Nullable String topicFeed) {
+        if (!hasFeeds())
+            return List.of();
+        List<Map<String, String>> feeds = new ArrayList<>();
+        feeds.add(Map.of("title", projectTitle, "path", SITE_FEED));
+        if (topicTitle != null && topicFeed != null)
+            feeds.add(Map.of("title", topicTitle, "path", topicFeed));
+        return feeds;
+    }
 
-    public ContentFragment getSubSubArticleFragment(SubSubArticle subsubarticle, String relPath) throws IOException {
-        StringWriter w = new StringWriter();
-        this.templateEngine.render("article-preview",
-                renderSubSubArticlePreview(subsubarticle, relPath, "Read on: "), w);
-        return new ContentFragment(subsubarticle.getTitle(), w.toString());
+    /**
+     * renders the static part of the page frame (head, title, organization and navigation)
+     *
+     * @param relPath     relative path of the pages using this frame
+     * @param criticalCss style rules inlined into the head, empty to only link the stylesheet
+     * @param feeds       feeds linked in the head, see {@link #getFeedLinks}
+     * @return the rendered HTML, encoded as UTF-8
+     */
+    private ByteBuffer renderChromeHeader(String relPath, String projectTitle, String organization,
+                                          List<SiteLink> headers, String criticalCss,
+                                          List<Map<String, String>> feeds) throws IOException {
+        try (HtmlBuffer w = HtmlBuffer.acquire()) {
+            this.templateEngine.renderOutput("website-header", Map.of(
+                    "relPath", relPath,
+                    "projectTitle", projectTitle,
+                    "organization", organization,
+                    "headers", headers,
+                    "criticalCss", criticalCss,
+                    "feeds", feeds,
+                    "serviceWorker", this.hashes != null), w);
+            return Utf8Buffer.encodeShared(w);
+        }
+    }
+
+    public ContentFragment getSubArticleFragment(SubArticle subarticle, String relPath) {
+        return new ContentFragment(subarticle.getTitle(), w ->
+                this.templateEngine.render("article-preview",
+                        renderSubArticlePreview(subarticle, relPath, "Read on: "), w));
+    }
+
+
+    public ContentFragment getSubSubArticleFragment(SubSubArticle subsubarticle, String relPath) {
+        return new ContentFragment(subsubarticle.getTitle(), w ->
+                this.templateEngine.render("article-preview",
+                        renderSubSubArticlePreview(subsubarticle, relPath, "Read on: "), w));
     }
 
 //    private Website.ContentFragment getSubEventFragment(SubEvent innerEvent, String relPath) throws IOException {
@@ -360,44 +904,60 @@ public class Renderer {
 //    }
 
     /**
-     * creates a ContentFragment object that contains HTML output for a node.
+     * creates a ContentFragment object that produces the HTML output for a node.
      * The HTML output for a node is created by invoking the rendering engine on a template
+     * when the fragment is written into its page
      *
      * @param storyNode node to render
      * @param relPath   relative path of the current page
      * @return a ContentFragment
      */
-    public ContentFragment getStoryContentFragment(AbstractContent storyNode, String relPath) throws IOException {
+    public ContentFragment getStoryContentFragment(AbstractContent storyNode, String relPath) {
         if (storyNode instanceof FormattedTextDocument textNode) {
-            StringWriter w = new StringWriter();
-            textNode.toHtml(w);
-            return new ContentFragment(null, w.toString());
+            return new ContentFragment(null, textNode::toHtml);
+        } else if (storyNode instanceof Media media && getMediaAddress(media) == null) {
+            // a link to the file on the machine building the site would be broken on any other machine
+            System.err.println("Leaving out media file that was not published: " + media.getMediaPath());
+            return new ContentFragment(null, "");
         } else if (storyNode instanceof Image image) {
-            //TODO not yet implemented
-            StringWriter w = new StringWriter();
-            this.templateEngine.render("content-fragment-image",
-                    Map.of("address", image.getMediaPath(), "title", image.hasTitle() ? image.getTitle() : ""), w);
-            return new ContentFragment(null, w.toString());
+            return new ContentFragment(null, w -> this.templateEngine.render("content-fragment-image",
+                    Map.of("address", getMediaAddress(image), "relPath", relPath, "srcset", getSrcset(image),
+                            "title", image.hasTitle() ? image.getTitle() : ""), w));
         } else if (storyNode instanceof Video image) {
-            //TODO not yet implemented
-            StringWriter w = new StringWriter();
-            this.templateEngine.render("content-fragment-video",
-                    Map.of("address", image.getMediaPath(), "title", image.hasTitle() ? image.getTitle() : ""), w);
-            return new ContentFragment(null, w.toString());
+            return new ContentFragment(null, w -> this.templateEngine.render("content-fragment-video",
+                    Map.of("address", getMediaAddress(image), "relPath", relPath,
+                            "title", image.hasTitle() ? image.getTitle() : ""), w));
+        } else if (storyNode instanceof YoutubeVideo image && this.youtubeFacade) {
+            return new ContentFragment(null, w -> w.write(getYoutubeFacade(image.getYoutubeId())));
         } else if (storyNode instanceof YoutubeVideo image) {
-            StringWriter w = new StringWriter();
-            this.templateEngine.render("content-fragment-youtube",
-                    Map.of("id", image.getYoutubeId()), w);
-            return new ContentFragment(null, w.toString());
+            return new ContentFragment(null, w -> this.templateEngine.render("content-fragment-youtube",
+                    Map.of("id", image.getYoutubeId()), w));
         } else {
             throw new RuntimeException("unsupported story content " + storyNode);
         }
     }
 
     /**
-     * collect all the content fragments of an entry
+     * placeholder for a YouTube video that loads the player when clicked; the markup only depends
+     * on the video id, so it is rendered once per video and reused on every page showing it
      */
-    public List<ContentFragment> getArticleContent(Article story, String relPath) throws IOException {
+    private String getYoutubeFacade(String youtubeId) throws IOException {
+        String facade = this.youtubeFacades.get(youtubeId);
+        if (facade == null) {
+            try (HtmlBuffer w = HtmlBuffer.acquire()) {
+                this.templateEngine.render("content-fragment-youtube-facade", Map.of("id", youtubeId), w);
+                facade = w.toString();
+            }
+            this.youtubeFacades.put(youtubeId, facade);
+        }
+        return facade;
+    }
+
+    /**
+     * collect all the content fragments of an entry; the fragments are rendered
+     * only when the page is written
+     */
+    public List<ContentFragment> getArticleContent(Article story, String relPath) {
         List<ContentFragment> result = new ArrayList<>();
         for (AbstractContent n : story.getContent())
             result.add(getStoryContentFragment(n, relPath));
@@ -408,7 +968,7 @@ public class Renderer {
         return result;
     }
 
-    public List<ContentFragment> getSubArticleContent(SubArticle story, String relPath) throws IOException {
+    public List<ContentFragment> getSubArticleContent(SubArticle story, String relPath) {
         List<ContentFragment> result = new ArrayList<>();
         for (AbstractContent n : story.getContent())
             result.add(getStoryContentFragment(n, relPath));
@@ -419,7 +979,7 @@ public class Renderer {
         return result;
     }
 
-    public List<ContentFragment> getSubSubArticleContent(SubSubArticle story, String relPath) throws IOException {
+    public List<ContentFragment> getSubSubArticleContent(SubSubArticle story, String relPath) {
         List<ContentFragment> result = new ArrayList<>();
         for (AbstractContent n : story.getContent())
             result.add(getStoryContentFragment(n, relPath));
@@ -430,11 +990,100 @@ public class Renderer {
 
     public void renderTopics(Project project) throws IOException {
         for (Topic topic : findAllTopics(project)) {
-            renderTopic(project, topic);
+            renderFrom(() -> renderTopic(project, topic));
         }
     }
 
 
+    /**
+     * publish the images and videos of all entries under names derived from their content, see
+     * {@link MediaPublisher}; in a sharded build only the first shard writes them, but all shards
+     * determine their published paths
+     */
+    public void publishMedia(Project project) throws IOException {
+        List<File> sources = new ArrayList<>();
+        Set<File> imageSources = new LinkedHashSet<>();
+        for (Object entry : findAllArticles(project))
+            for (AbstractContent content : getContent(entry))
+                if (content instanceof Media media) {
+                    sources.add(media.getMediaPath());
+                    if (media instanceof Image)
+                        imageSources.add(media.getMediaPath());
+                }
+        if (sources.isEmpty())
+            return;
+        File hashCache = this.cacheDirectory == null ? null : new File(this.cacheDirectory, MediaPublisher.HASH_CACHE);
+        MediaPublisher publisher = new MediaPublisher(this.output, hashCache, project.getSourceDirectory(),
+                this.shard == null || this.shard.index() == 0);
+        this.mediaPublisher = publisher;
+        for (Map.Entry<File, String> media : publisher.publish(sources).entrySet()) {
+            this.mediaPaths.put(media.getKey(), media.getValue());
+            this.templateEngine.getAssets().registerPublished(getSourcePath(project, media.getKey()),
+                    media.getValue());
+        }
+
+        if (this.responsiveImages && this.cacheDirectory != null) {
+            Map<File, String> images = new LinkedHashMap<>();
+            for (File source : imageSources)
+                if (this.mediaPaths.containsKey(source))
+                    images.put(source, this.mediaPaths.get(source));
+            this.imageVersions.putAll(new ImageDerivatives(this.output, this.cacheDirectory,
+                    this.shard == null || this.shard.index() == 0).create(images));
+        }
+    }
+
+    /**
+     * the publisher of the media files of the last rendered project, with the number of files it
+     * published; null if the project has no media files
+     */
+    public @Nullable MediaPublisher getMediaPublisher() {
+        return this.mediaPublisher;
+    }
+
+    /**
+     * the versions of an image for its srcset attribute, empty if there are no smaller versions
+     */
+    private List<Map<String, Object>> getSrcset(Image image) {
+        List<ImageDerivatives.Derivative> versions = this.imageVersions.get(image.getMediaPath());
+        if (versions == null || versions.size() < 2)
+            return Collections.emptyList();
+        List<Map<String, Object>> srcset = new ArrayList<>();
+        for (ImageDerivatives.Derivative version : versions)
+            srcset.add(Map.of("address", "/" + version.path(), "width", version.width()));
+        return srcset;
+    }
+
+    /**
+     * path of a media file in the site before publishing, relative to the project directory, such as
+     * {@code my-article/photo.jpg}
+     */
+    private static String getSourcePath(Project project, File media) {
+        File directory = project.getSourceDirectory();
+        if (directory == null)
+            return media.getName();
+        return directory.toPath().toAbsolutePath().normalize()
+                .relativize(media.toPath().toAbsolutePath().normalize())
+                .toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * address of a published media file
+     *
+     * @return the address, null if the file was not published
+     */
+    private @Nullable String getMediaAddress(Media media) {
+        String path = this.mediaPaths.get(media.getMediaPath());
+        return path == null ? null : "/" + path;
+    }
+
+    private static List<AbstractContent> getContent(Object entry) {
+        if (entry instanceof Article a)
+            return a.getContent();
+        if (entry instanceof SubArticle sa)
+            return sa.getContent();
+        return ((SubSubArticle) entry).getContent();
+    }
+
     public List<Object> findAllArticles(Project project) {
         List<Object> result = new ArrayList<>();
         for (Article a : project.getArticles()) {
@@ -450,15 +1099,33 @@ public class Renderer {
     }
 
 
+    /**
+     * the entries of each topic, in the order of {@link #findAllArticles}; collected in a single pass
+     * over all entries and shared by the topic pages and feeds
+     */
+    private Map<Topic, List<Object>> getArticlesByTopic(Project project) {
+        if (this.articlesByTopic == null) {
+            Map<Topic, List<Object>> result = new HashMap<>();
+            for (Object entry : findAllArticles(project))
+                for (Topic topic : project.getTopics(entry))
+                    result.computeIfAbsent(topic, t -> new ArrayList<>()).add(entry);
+            this.articlesByTopic = result;
+        }
+        return this.articlesByTopic;
+    }
+
     public void renderTopic(Project project, Topic topic) throws IOException {
-        List<Object> allArticles = new WebGen().findArticlesByTopic(project, topic);
-        List<List<Object>> articlePages = WebGen.paginateContent(allArticles.iterator(), 5);
+        List<Object> allArticles = getArticlesByTopic(project).getOrDefault(topic, List.of());
+        List<List<Object>> articlePages = paginateArticles(allArticles);
         String basePath = getTopicPath(topic);
-        for (int pageIdx = 0; pageIdx < articlePages.size(); pageIdx++) {
-            String pagePath = createPaginatedPath(basePath, pageIdx);
-
+        int pageCount = articlePages.size();
+        for (int pageIdx = 0; pageIdx < pageCount; pageIdx++) {
+            String pagePath = createArticleListPath(basePath, pageIdx, pageCount);
             List<Object> article = articlePages.get(pageIdx);
-            Pagination pagination = createPagination(pageIdx, articlePages.size(), (i) -> createURL(createPaginatedPath(basePath, i)));
+            LocalDateTime lastUpdate = newestUpdate(article);
+            if (!claimPage(pagePath, lastUpdate)) continue;
+
+            Pagination pagination = createArticleListPagination(basePath, pageIdx, pageCount);
             List<ArticlePreview> previews = new ArrayList<>();
             String relPath = getRelPath(pagePath);
             for (Object s : article) {
@@ -471,22 +1138,67 @@ public class Renderer {
             }
 
             ArticleListPage page = new ArticleListPage(
-                    genSiteData(project, relPath),
+                    genSiteData(project, relPath, lastUpdate),
                     "Articles for: " + topic.name(),
                     hasPagination(pagination),
                     pagination,
-                    previews);
-            File targetFile = new File(new File(this.targetDirectory, pagePath), "index.html");
-            this.templateEngine.render(page.getTemplate(), page, targetFile);
+                    previews,
+                    hasFeeds() ? getTopicFeedPath(topic) : null);
+            renderPage(page, getOutputPath(pagePath));
         }
     }
 
+    private boolean hasFeeds() {
+        return this.feedSize > 0 && this.siteUrl != null;
+    }
+
+    /**
+     * write the Atom feeds of the site and of each topic with the most recently published
+     * entries; feeds whose entries did not change are skipped, see {@link FeedWriter}
+     */
+    public void renderFeeds(Project project) throws IOException {
+        assert this.siteUrl != null;
+        FeedWriter feeds = new FeedWriter(this.output, this.siteUrl, project.getOwnerOrg(), this.output.getRoot());
+        feeds.write(SITE_FEED, project.getTitle(), ARTICLES_ADDRESS, getFeedEntries(findAllArticles(project)));
+        Map<Topic, List<Object>> articlesByTopic = getArticlesByTopic(project);
+        for (Topic topic : findAllTopics(project))
+            feeds.write(getTopicFeedPath(topic), "Articles for: " + topic.name(), getTopicPath(topic),
+                    getFeedEntries(articlesByTopic.getOrDefault(topic, List.of())));
+        feeds.finish();
+    }
+
+    /**
+     * the most recently published entries for a feed, with the preview text shown on the homepage
+     * as summary
+     */
+    private List<FeedWriter.Entry> getFeedEntries(List<Object> entries) {
+        String relPath = getRelPath(HOME_ADDRESS);
+        List<FeedWriter.Entry> result = new ArrayList<>();
+        for (Object entry : entries.stream()
+                .sorted(Comparator.comparing(this::getPublishedDate).reversed())
+                .limit(this.feedSize).toList()) {
+            if (entry instanceof Article a)
+                result.add(new FeedWriter.Entry(getArticlePath(a), a.getTitle(), a.getPublishedDate(),
+                        a.getLastUpdate(), () -> renderArticlePreview(a, relPath, "").getPreview()));
+            if (entry instanceof SubArticle sa)
+                result.add(new FeedWriter.Entry(getSubArticlePath(sa), sa.getTitle(), sa.getPublishedDate(),
+                        sa.getLastUpdate(), () -> renderSubArticlePreview(sa, relPath, "").getPreview()));
+            if (entry instanceof SubSubArticle ssa)
+                result.add(new FeedWriter.Entry(getSubSubArticlePath(ssa), ssa.getTitle(), ssa.getPublishedDate(),
+                        ssa.getLastUpdate(), () -> renderSubSubArticlePreview(ssa, relPath, "").getPreview()));
+        }
+        return result;
+    }
+
     public boolean hasPagination(Pagination pagination) {
         if (pagination.getPages().size() == 0) return false;
         if (pagination.getPages().size() > 1) return true;
         return pagination.getPages().get(0).size() != 1;
     }
 
+    /**
+     * all topics used in the project, in a stable order (by name)
+     */
     public Set<Topic> findAllTopics(Project project) {
         Set<Topic> topics = new HashSet<>();
         for (Article a : project.getArticles()) {
@@ -498,25 +1210,27 @@ public class Renderer {
                 }
             }
         }
-        return topics;
+        return topics.stream().sorted(Comparator.comparing(Topic::getName).thenComparing(Topic::getId))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     public void renderTopicList(Project project) throws IOException {
         List<List<Topic>> topicPages = WebGen.paginateContent(findAllTopics(project).iterator(), 5);
         String basePath = TOPICS_ADDRESS;
+        LocalDateTime lastUpdate = newestUpdate(findAllArticles(project));
         for (int pageIdx = 0; pageIdx < topicPages.size(); pageIdx++) {
             String pagePath = createPaginatedPath(basePath, pageIdx);
+            if (!claimPage(pagePath, lastUpdate)) continue;
             List<SiteLink> topics = topicPages.get(pageIdx).stream().map(this::mkTopicLink).collect(Collectors.toList());
             Pagination pagination = createPagination(pageIdx, topicPages.size(),
                     (i) -> createURL(createPaginatedPath(basePath, i)));
             TopicListPage page = new TopicListPage(
-                    genSiteData(project, getRelPath(pagePath)),
+                    genSiteData(project, getRelPath(pagePath), lastUpdate),
                     "Topics",
                     hasPagination(pagination),
                     pagination,
                     topics);
-            File targetFile = new File(new File(this.targetDirectory, pagePath), "index.html");
-            this.templateEngine.render(page.getTemplate(), page, targetFile);
+            renderPage(page, getOutputPath(pagePath));
         }
     }
 
@@ -528,6 +1242,13 @@ public class Renderer {
         return TOPICS_ADDRESS + topic.getId() + "/";
     }
 
+    /**
+     * path of the Atom feed of a topic relative to the root of the site
+     */
+    public String getTopicFeedPath(Topic topic) {
+        return getTopicPath(topic).substring(1) + SITE_FEED;
+    }
+
     public SiteURL getArticleURL(Article entry) {
         return createURL(getArticlePath(entry));
     }
@@ -578,13 +1299,15 @@ public class Renderer {
 
 
     public void renderArticleList(Project project) throws IOException {
-        List<List<Object>> articlePages = WebGen.paginateContent(findAllArticles(project).iterator(), 5);
+        List<List<Object>> articlePages = paginateArticles(findAllArticles(project));
         String basePath = ARTICLES_ADDRESS;
-        for (int pageIdx = 0; pageIdx < articlePages.size(); pageIdx++) {
-            String pagePath = createPaginatedPath(basePath, pageIdx);
+        int pageCount = articlePages.size();
+        for (int pageIdx = 0; pageIdx < pageCount; pageIdx++) {
+            String pagePath = createArticleListPath(basePath, pageIdx, pageCount);
             List<Object> articles = articlePages.get(pageIdx);
-            Pagination pagination = createPagination(pageIdx, articlePages.size(),
-                    (i) -> createURL(createPaginatedPath(basePath, i)));
+            LocalDateTime lastUpdate = newestUpdate(articles);
+            if (!claimPage(pagePath, lastUpdate)) continue;
+            Pagination pagination = createArticleListPagination(basePath, pageIdx, pageCount);
             List<ArticlePreview> previews = new ArrayList<>();
             String relPath = getRelPath(pagePath);
             for (Object s : articles) {
@@ -597,13 +1320,12 @@ public class Renderer {
             }
 
             ArticleListPage page = new ArticleListPage(
-                    genSiteData(project, relPath),
+                    genSiteData(project, relPath, lastUpdate),
                     "Articles",
                     hasPagination(pagination),
                     pagination,
                     previews);
-            File targetFile = new File(new File(this.targetDirectory, pagePath), "index.html");
-            this.templateEngine.render(page.getTemplate(), page, targetFile);
+            renderPage(page, getOutputPath(pagePath));
         }
     }
 
@@ -658,65 +1380,70 @@ public class Renderer {
      * @return an ArticlePreview object for the template engine
      */
     public ArticlePreview renderArticlePreview(Article article, String relPath, String prefix) {
-        StringWriter w = new StringWriter();
-        int previewLength = 200;
-        for (AbstractContent c : article.getContent()) {
-            if (c instanceof FormattedTextDocument) {
-                if (previewLength > 0) {
-                    previewLength = ((FormattedTextDocument) c).toPreview(w, previewLength);
-                }
-            }
-        }
+        PreviewCache.CachedPreview preview = this.previewCache.get(article, relPath, () ->
+                new PreviewCache.CachedPreview(
+                        renderPreviewText(article.getContent()),
+                        WebGen.readableFormat(article.getPublishedDate())));
 
         return new ArticlePreview(
                 prefix,
                 article.getTitle(),
-                WebGen.readableFormat(article.getPublishedDate()),
-                w.toString(),
+                preview.date(),
+                preview.preview(),
                 relPath,
                 getArticleURL(article));
     }
 
     public ArticlePreview renderSubArticlePreview(SubArticle article, String relPath, String prefix) {
-        StringWriter w = new StringWriter();
-        int previewLength = 200;
-        for (AbstractContent c : article.getContent()) {
-            if (c instanceof FormattedTextDocument) {
-                if (previewLength > 0) {
-                    previewLength = ((FormattedTextDocument) c).toPreview(w, previewLength);
-                }
-            }
-        }
+        PreviewCache.CachedPreview preview = this.previewCache.get(article, relPath, () ->
+                new PreviewCache.CachedPreview(
+                        renderPreviewText(article.getContent()),
+                        WebGen.readableFormat(article.getPublishedDate())));
 
         return new ArticlePreview(
                 prefix,
                 article.getTitle(),
-                WebGen.readableFormat(article.getPublishedDate()),
-                w.toString(),
+                preview.date(),
+                preview.preview(),
                 relPath,
                 getSubArticleURL(article));
     }
 
     public ArticlePreview renderSubSubArticlePreview(SubSubArticle article, String relPath, String prefix) {
-        StringWriter w = new StringWriter();
-        int previewLength = 200;
-        for (AbstractContent c : article.getContent()) {
-            if (c instanceof FormattedTextDocument) {
-                if (previewLength > 0) {
-                    previewLength = ((FormattedTextDocument) c).toPreview(w, previewLength);
-                }
-            }
-        }
+        PreviewCache.CachedPreview preview = this.previewCache.get(article, relPath, () ->
+                new PreviewCache.CachedPreview(
+                        renderPreviewText(article.getContent()),
+                        WebGen.readableFormat(article.getPublishedDate())));
 
         return new ArticlePreview(
                 prefix,
                 article.getTitle(),
-                WebGen.readableFormat(article.getPublishedDate()),
-                w.toString(),
+                preview.date(),
+                preview.preview(),
                 relPath,
                 getSubSubArticleURL(article));
     }
 
+    /**
+     * preview text of the formatted text documents in an entry's content
+     *
+     * @param content content of the entry
+     * @return html of the preview text, at most {@link FormattedTextDocument#MAX_PREVIEW_LENGTH} characters of text
+     */
+    private String renderPreviewText(List<AbstractContent> content) {
+        try (HtmlBuffer w = HtmlBuffer.acquire()) {
+            int previewLength = FormattedTextDocument.MAX_PREVIEW_LENGTH;
+            for (AbstractContent c : content) {
+                if (c instanceof FormattedTextDocument) {
+                    if (previewLength > 0) {
+                        previewLength = ((FormattedTextDocument) c).toPreview(w, previewLength);
+                    }
+                }
+            }
+            return w.toString();
+        }
+    }
+
     /**
      * create a preview snippet of an event
      *
@@ -0,0 +1,98 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.output.ContentHash;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Service worker that keeps the most important files of the site available offline.
+ * <p>
+ * The files to keep are listed in a precache manifest together with a hash of their content
+ * (their revision). The name of the manifest contains a hash of all entries, so that the service
+ * worker script changes whenever a file changes, which makes browsers install the new version.
+ * The service worker caches files by path and revision, so that returning visitors only download
+ * the files whose content changed. The name of the current manifest is recorded in
+ * {@link #STATE_PATH}, so that the next build can remove it once it is replaced.
+ */
+public class ServiceWorker {
+
+    public static final String SCRIPT_PATH = "sw.js";
+    public static final String STATE_PATH = ".webgen-precache.manifest";
+    public static final int PRECACHED_ARTICLES = 10;
+    private static final String MANIFEST_PLACEHOLDER = "__PRECACHE_MANIFEST__";
+    private static final int VERSION_LENGTH = 10;
+
+    private ServiceWorker() {
+    }
+
+    /**
+     * a file of the precache manifest
+     *
+     * @param path     path relative to the root of the site
+     * @param revision hash of the content of the file
+     */
+    public record Entry(String path, String revision) {
+    }
+
+    /**
+     * path of the precache manifest, which contains a hash of all its entries
+     *
+     * @param entries files of the manifest
+     * @return path relative to the root of the site
+     */
+    public static String getManifestPath(List<Entry> entries) {
+        MessageDigest digest = ContentHash.newDigest();
+        for (Entry entry : entries)
+            digest.update((entry.path() + "\t" + entry.revision() + "\n").getBytes(StandardCharsets.UTF_8));
+        return "precache-manifest.%s.json".formatted(
+                ContentHash.toHex(digest).substring(0, VERSION_LENGTH));
+    }
+
+    /**
+     * whether a path is the path of a precache manifest, as returned by {@link #getManifestPath}
+     */
+    public static boolean isManifestPath(String path) {
+        return path.matches("precache-manifest\\.[0-9a-f]{" + VERSION_LENGTH + "}\\.json");
+    }
+
+    /**
+     * the precache manifest as JSON
+     *
+     * @param entries files of the manifest
+     * @return UTF-8 encoded JSON
+     */
+    public static byte[] manifestJson(List<Entry> entries) {
+        StringBuilder json = new StringBuilder("{\n  \"files\": [");
+        String separator = "\n";
+        for (Entry entry : entries) {
+            json.append(separator).append("    {\"url\": ");
+            AssetManifest.appendJsonString(json, entry.path());
+            json.append(", \"revision\": ");
+            AssetManifest.appendJsonString(json, entry.revision());
+            json.append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * the service worker script
+     *
+     * @param manifestPath path of the precache manifest relative to the root of the site
+     * @return UTF-8 encoded script
+     * @throws IOException if the script cannot be read
+     */
+    public static byte[] script(String manifestPath) throws IOException {
+        String script;
+        try (InputStream source = ServiceWorker.class.getResourceAsStream("/js/sw.js")) {
+            script = IOUtils.toString(source, StandardCharsets.UTF_8);
+        }
+        return script.replace(MANIFEST_PLACEHOLDER, manifestPath).getBytes(StandardCharsets.UTF_8);
+    }
+}
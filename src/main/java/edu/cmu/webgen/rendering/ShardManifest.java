@@ -0,0 +1,87 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.WebGenArgs;
+import edu.cmu.webgen.output.OutputSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Manifests of sharded builds.
+ * <p>
+ * Each shard of a sharded build writes the paths of the pages it rendered into a manifest
+ * in the shared target directory. Once all shards finished, {@link #merge} checks that the
+ * shards together rendered every page of the site exactly once and combines their manifests.
+ */
+public class ShardManifest {
+
+    public static final String MERGED_MANIFEST = ".webgen-pages.manifest";
+
+    private ShardManifest() {
+    }
+
+    public static String getManifestPath(WebGenArgs.Shard shard) {
+        return ".webgen-shard-%d-of-%d.manifest".formatted(shard.index(), shard.count());
+    }
+
+    public static File getManifestFile(File targetDirectory, WebGenArgs.Shard shard) {
+        return new File(targetDirectory, getManifestPath(shard));
+    }
+
+    /**
+     * write the manifest of a shard
+     *
+     * @param output    output of the build
+     * @param shard     the shard
+     * @param pagePaths paths of the pages rendered by this shard
+     * @throws IOException if the manifest cannot be written
+     */
+    public static void write(OutputSink output, WebGenArgs.Shard shard, Collection<String> pagePaths)
+            throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        for (String pagePath : pagePaths)
+            manifest.append(pagePath).append('\n');
+        output.write(getManifestPath(shard), StandardCharsets.UTF_8.encode(CharBuffer.wrap(manifest)));
+    }
+
+    /**
+     * check that the manifests of all shards cover exactly the pages of the site and, if they do,
+     * write the merged manifest
+     *
+     * @param targetDirectory target directory of the build
+     * @param shardCount      number of shards
+     * @param allPagePaths    paths of all pages of the site
+     * @return problems found, empty if the shards cover every page exactly once
+     * @throws IOException if a manifest cannot be read or written
+     */
+    public static List<String> merge(File targetDirectory, int shardCount, Set<String> allPagePaths)
+            throws IOException {
+        List<String> problems = new ArrayList<>();
+        Map<String, Integer> renderedBy = new HashMap<>();
+        for (int idx = 0; idx < shardCount; idx++) {
+            File manifest = getManifestFile(targetDirectory, new WebGenArgs.Shard(idx, shardCount));
+            if (!manifest.isFile()) {
+                problems.add("Missing manifest of shard %d/%d: %s".formatted(idx, shardCount, manifest));
+                continue;
+            }
+            for (String pagePath : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+                Integer other = renderedBy.put(pagePath, idx);
+                if (other != null)
+                    problems.add("Page %s rendered by shards %d and %d".formatted(pagePath, other, idx));
+                if (!allPagePaths.contains(pagePath))
+                    problems.add("Page %s of shard %d is not part of the site".formatted(pagePath, idx));
+            }
+        }
+        for (String pagePath : allPagePaths)
+            if (!renderedBy.containsKey(pagePath))
+                problems.add("Page %s not rendered by any shard".formatted(pagePath));
+
+        if (problems.isEmpty())
+            Files.write(new File(targetDirectory, MERGED_MANIFEST).toPath(), allPagePaths, StandardCharsets.UTF_8);
+        return problems;
+    }
+}
@@ -0,0 +1,209 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.output.ContentHash;
+import edu.cmu.webgen.output.OutputSink;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Writes the sitemap of the site, listing every page with the last update of its content.
+ * <p>
+ * Sitemaps are limited to 50,000 URLs and 50 MB. Larger sites are split into the files
+ * {@code sitemap-1.xml}, {@code sitemap-2.xml}, ..., and {@code sitemap.xml} becomes an index
+ * referring to them. Each file is streamed to the output as its entries are written, it is never
+ * held in memory as a whole. A manifest records a digest of the entries of each file, so that files
+ * whose entries did not change are not generated again; files of an earlier build that are no
+ * longer part of the sitemap, such as {@code sitemap-3.xml} after the site shrank, are deleted.
+ */
+public class SitemapWriter {
+
+    public static final String SITEMAP = "sitemap.xml";
+    public static final String MANIFEST = ".webgen-sitemap.manifest";
+    public static final int MAX_URLS = 50_000;
+    public static final long MAX_BYTES = 50L * 1024 * 1024;
+    private static final String NAMESPACE = "http://www.sitemaps.org/schemas/sitemap/0.9";
+    // upper bound of an entry without its URL and of a file without its entries
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int FILE_OVERHEAD = 256;
+
+    private final OutputSink output;
+    private final String siteUrl;
+    private final @Nullable File root;
+    private int filesWritten = 0;
+    private int filesUnchanged = 0;
+
+    /**
+     * @param output  receives the sitemap
+     * @param siteUrl absolute URL of the root of the site, such as {@code https://example.org}
+     * @param root    directory the output is written to, used to find the manifest and files of
+     *                an earlier build; null to always write all files
+     */
+    public SitemapWriter(OutputSink output, String siteUrl, @Nullable File root) {
+        this.output = output;
+        this.siteUrl = siteUrl.endsWith("/") ? siteUrl.substring(0, siteUrl.length() - 1) : siteUrl;
+        this.root = root;
+    }
+
+    /**
+     * one URL of the sitemap
+     */
+    private record Entry(String loc, @Nullable LocalDateTime lastUpdate) {
+    }
+
+    /**
+     * write the sitemap
+     *
+     * @param pagePaths   paths of all pages of the site, in the order they should be listed
+     * @param lastUpdates last update of the content of each page; pages without content are missing
+     * @throws IOException if the sitemap cannot be written
+     */
+    public void write(Collection<String> pagePaths, Map<String, LocalDateTime> lastUpdates) throws IOException {
+        List<List<Entry>> files = new ArrayList<>();
+        List<Entry> current = new ArrayList<>();
+        long currentBytes = FILE_OVERHEAD;
+        for (String pagePath : pagePaths) {
+            Entry entry = new Entry(this.siteUrl + pagePath, lastUpdates.get(pagePath));
+            // URLs are at most 5 times longer when escaped
+            long entryBytes = ENTRY_OVERHEAD + 5L * entry.loc().getBytes(StandardCharsets.UTF_8).length;
+            if (!current.isEmpty() && (current.size() >= MAX_URLS || currentBytes + entryBytes > MAX_BYTES)) {
+                files.add(current);
+                current = new ArrayList<>();
+                currentBytes = FILE_OVERHEAD;
+            }
+            current.add(entry);
+            currentBytes += entryBytes;
+        }
+        files.add(current);
+
+        Properties manifest = loadManifest();
+        Map<String, String> updated = new LinkedHashMap<>();
+        if (files.size() == 1) {
+            writeIfChanged(SITEMAP, "urlset", files.get(0), manifest, updated);
+        } else {
+            List<Entry> index = new ArrayList<>();
+            for (int idx = 0; idx < files.size(); idx++) {
+                String name = "sitemap-%d.xml".formatted(idx + 1);
+                writeIfChanged(name, "urlset", files.get(idx), manifest, updated);
+                index.add(new Entry(this.siteUrl + "/" + name, newest(files.get(idx))));
+            }
+            writeIfChanged(SITEMAP, "sitemapindex", index, manifest, updated);
+        }
+        for (String name : manifest.stringPropertyNames())
+            if (!updated.containsKey(name) && isSitemapFile(name))
+                this.output.delete(name);
+        // written without the timestamp of Properties.store, so that it only changes with the sitemap
+        StringBuilder manifestContent = new StringBuilder();
+        for (Map.Entry<String, String> file : updated.entrySet())
+            manifestContent.append(file.getKey()).append('=').append(file.getValue()).append('\n');
+        this.output.write(MANIFEST, ByteBuffer.wrap(manifestContent.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * number of sitemap files written by the last {@link #write}
+     */
+    public int getFilesWritten() {
+        return this.filesWritten;
+    }
+
+    /**
+     * number of sitemap files skipped by the last {@link #write} because their entries did not change
+     */
+    public int getFilesUnchanged() {
+        return this.filesUnchanged;
+    }
+
+    private void writeIfChanged(String name, String rootElement, List<Entry> entries, Properties manifest,
+                                Map<String, String> updated) throws IOException {
+        String digest = digest(rootElement, entries);
+        updated.put(name, digest);
+        if (this.root != null && digest.equals(manifest.getProperty(name)) && new File(this.root, name).isFile()) {
+            this.output.keep(name);
+            this.filesUnchanged++;
+            return;
+        }
+        this.output.stream(name, out -> render(rootElement, entries, out));
+        this.filesWritten++;
+    }
+
+    /**
+     * only names this writer creates, so that a modified manifest cannot delete other files
+     */
+    private static boolean isSitemapFile(String name) {
+        return name.equals(SITEMAP) || name.matches("sitemap-[0-9]+\\.xml");
+    }
+
+    private static void render(String rootElement, List<Entry> entries, OutputStream out) throws IOException {
+        String entryElement = rootElement.equals("urlset") ? "url" : "sitemap";
+        try {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement(rootElement);
+            xml.writeDefaultNamespace(NAMESPACE);
+            xml.writeCharacters("\n");
+            for (Entry entry : entries) {
+                xml.writeStartElement(entryElement);
+                xml.writeStartElement("loc");
+                xml.writeCharacters(entry.loc());
+                xml.writeEndElement();
+                if (entry.lastUpdate() != null) {
+                    xml.writeStartElement("lastmod");
+                    xml.writeCharacters(formatDate(entry.lastUpdate()));
+                    xml.writeEndElement();
+                }
+                xml.writeEndElement();
+                xml.writeCharacters("\n");
+            }
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+            // does not close the stream
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot write sitemap", e);
+        }
+    }
+
+    private Properties loadManifest() throws IOException {
+        Properties manifest = new Properties();
+        File manifestFile = this.root == null ? null : new File(this.root, MANIFEST);
+        if (manifestFile != null && manifestFile.isFile())
+            try (Reader in = new FileReader(manifestFile, StandardCharsets.UTF_8)) {
+                manifest.load(in);
+            }
+        return manifest;
+    }
+
+    private static String digest(String rootElement, List<Entry> entries) {
+        MessageDigest digest = ContentHash.newDigest();
+        digest.update(rootElement.getBytes(StandardCharsets.UTF_8));
+        for (Entry entry : entries)
+            digest.update(("\n" + entry.loc() + "\t" + (entry.lastUpdate() == null ? "" : formatDate(entry.lastUpdate()))).getBytes(StandardCharsets.UTF_8));
+        return ContentHash.toHex(digest);
+    }
+
+    private static @Nullable LocalDateTime newest(List<Entry> entries) {
+        return entries.stream().map(Entry::lastUpdate).filter(Objects::nonNull).max(Comparator.naturalOrder())
+                .orElse(null);
+    }
+
+    /**
+     * W3C datetime with the offset of the local time zone, as expected by sitemaps
+     */
+    private static String formatDate(LocalDateTime date) {
+        return date.truncatedTo(ChronoUnit.SECONDS).atZone(ZoneId.systemDefault()).toOffsetDateTime()
+                .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+    }
+}
@@ -1,11 +1,18 @@
 package edu.cmu.webgen.rendering;
 
 import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Helper;
+import com.github.jknack.handlebars.Options;
 import com.github.jknack.handlebars.Template;
 import com.github.jknack.handlebars.io.ClassPathTemplateLoader;
 import com.github.jknack.handlebars.io.TemplateLoader;
+import edu.cmu.webgen.output.FileSystemSink;
+import edu.cmu.webgen.output.OutputSink;
+import edu.cmu.webgen.rendering.data.ContentFragment;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * This class interacts with the template engine and creates HTML files
@@ -15,17 +22,56 @@ import java.io.*;
 public class TemplateEngine {
 
     private final Handlebars handlebars;
+    private final boolean minify;
+    private final AssetManifest assets;
+    private int filesWritten = 0;
+    private int filesUnchanged = 0;
+    private long bytesSavedByMinification = 0;
 
     public TemplateEngine() {
+        this(false, false);
+    }
+
+    /**
+     * @param minify            if set, whitespace and comments are removed from the written pages,
+     *                          see {@link MinifyingWriter}
+     * @param fingerprintAssets if set, assets are published under names containing a hash of their
+     *                          content, see {@link AssetManifest}
+     */
+    public TemplateEngine(boolean minify, boolean fingerprintAssets) {
+        this.minify = minify;
+        this.assets = new AssetManifest(fingerprintAssets);
         TemplateLoader loader = new ClassPathTemplateLoader();
         loader.setPrefix("/html");
         loader.setSuffix(".hbs");
         this.handlebars = new Handlebars(loader);
+        this.handlebars.registerHelper("fragmentContent", (Helper<ContentFragment>) this::writeFragment);
+        this.handlebars.registerHelper("asset", (Helper<String>) (path, options) -> this.assets.resolve(path));
+    }
+
+    /**
+     * the published names of assets; templates resolve them with {@code {{asset "css/main.css"}}}
+     */
+    public AssetManifest getAssets() {
+        return this.assets;
+    }
+
+    /**
+     * helper streaming the HTML of a content fragment into the page output,
+     * used as {@code {{{fragmentContent this}}}}; handlebars' buffer writes through to the
+     * writer of the page, so the fragment is not buffered on its own
+     */
+    private Object writeFragment(ContentFragment fragment, Options options) throws IOException {
+        Options.Buffer out = options.buffer();
+        fragment.render(new AppendableWriter(out));
+        return out;
     }
 
     /**
      * render a template with a target object that holds the data used in the template
      * and write it into the targetFile
+     * <p>
+     * the file is only written if its content changes, see {@link FileSystemSink}
      *
      * @param templateName name of the template without the ".hbs" extension
      * @param root         object that provides the data used in the template as fields or getter methods
@@ -33,11 +79,93 @@ public class TemplateEngine {
      * @throws IOException if I/O problems occur
      */
     public void render(String templateName, Object root, File targetFile) throws IOException {
-        targetFile.getParentFile().mkdirs();
+        render(templateName, root, null, new FileSystemSink(targetFile.getParentFile()), targetFile.getName());
+    }
+
+    /**
+     * render a template and write it into a file of an output sink after already encoded content,
+     * such as the static part of the page frame shared by many pages
+     * <p>
+     * the page is rendered into a character buffer and encoded as a whole before it is written,
+     * because sinks compare the complete content with the existing file; so the memory needed per
+     * page is its characters plus its UTF-8 encoding, content fragments add nothing to it
+     *
+     * @param templateName name of the template without the ".hbs" extension
+     * @param root         object that provides the data used in the template as fields or getter methods
+     * @param prefix       UTF-8 content written before the rendered template, null for none; it is not modified
+     * @param output       sink receiving the file
+     * @param path         path of the file relative to the root of the site
+     * @throws IOException if I/O problems occur
+     */
+    public void render(String templateName, Object root, @Nullable ByteBuffer prefix, OutputSink output,
+                       String path) throws IOException {
+        try (HtmlBuffer buffer = HtmlBuffer.acquire(); Utf8Buffer bytes = Utf8Buffer.acquire()) {
+            renderOutput(templateName, root, buffer);
+            ByteBuffer body = bytes.encode(buffer);
+            if (prefix == null)
+                write(output, path, body);
+            else
+                write(output, path, prefix.duplicate(), body);
+        }
+    }
+
+    /**
+     * render a template whose result is written into the output as it is, such as a page or the
+     * static part of the page frame; the result is minified if this engine minifies its output
+     *
+     * @param templateName name of the template without the ".hbs" extension
+     * @param root         object that provides the data used in the template as fields or getter methods
+     * @param writer       writer into which the result is written
+     * @throws IOException if I/O problems occur
+     */
+    public void renderOutput(String templateName, Object root, Writer writer) throws IOException {
+        if (!this.minify) {
+            render(templateName, root, writer);
+            return;
+        }
+        MinifyingWriter minifier = new MinifyingWriter(writer);
+        render(templateName, root, minifier);
+        minifier.finish();
+        this.bytesSavedByMinification += minifier.getBytesSaved();
+    }
 
-        try (Writer out = new BufferedWriter(new FileWriter(targetFile))) {
-            render(templateName, root, out);
+    /**
+     * write a file into an output sink and count whether it changed
+     *
+     * @param output sink receiving the file
+     * @param path   path of the file relative to the root of the site
+     * @param chunks content of the file, in order
+     * @return true if the file was written, false if it was unchanged
+     * @throws IOException if I/O problems occur
+     */
+    public boolean write(OutputSink output, String path, ByteBuffer... chunks) throws IOException {
+        if (output.write(path, chunks)) {
+            this.filesWritten++;
+            return true;
         }
+        this.filesUnchanged++;
+        return false;
+    }
+
+    /**
+     * number of files written since this engine was created
+     */
+    public int getFilesWritten() {
+        return this.filesWritten;
+    }
+
+    /**
+     * number of files that were not written because their content did not change
+     */
+    public int getFilesUnchanged() {
+        return this.filesUnchanged;
+    }
+
+    /**
+     * number of bytes removed by minification since this engine was created
+     */
+    public long getBytesSavedByMinification() {
+        return this.bytesSavedByMinification;
     }
 
     /**
@@ -0,0 +1,117 @@
+package edu.cmu.webgen.rendering;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * Direct byte buffer holding the UTF-8 encoding of rendered output.
+ * <p>
+ * All output is written as UTF-8, independent of the platform's default charset, which is
+ * also what the pages declare in their head. Encoders and buffers are reused per thread:
+ * obtain a buffer with {@link #acquire()} and return it to the pool by closing it.
+ * Direct buffers can be handed to a {@link java.nio.channels.FileChannel} without copying.
+ */
+public final class Utf8Buffer implements AutoCloseable {
+
+    private static final int INITIAL_CAPACITY = 32 * 1024;
+    // buffers that grew beyond this size are shrunk before returning them to the pool
+    private static final int MAX_POOLED_CAPACITY = 4 * 1024 * 1024;
+    private static final ThreadLocal<ArrayDeque<Utf8Buffer>> pool = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final ThreadLocal<CharsetEncoder> encoder = ThreadLocal.withInitial(() ->
+            StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+    private ByteBuffer bytes = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+    private boolean inUse = false;
+
+    private Utf8Buffer() {
+    }
+
+    /**
+     * take a buffer from the pool of the current thread
+     *
+     * @return a buffer, to be closed after use
+     */
+    public static Utf8Buffer acquire() {
+        Utf8Buffer buffer = pool.get().poll();
+        if (buffer == null)
+            buffer = new Utf8Buffer();
+        buffer.inUse = true;
+        return buffer;
+    }
+
+    /**
+     * encode the content of an html buffer, replacing the previous content of this buffer
+     *
+     * @param html the characters to encode
+     * @return the encoded bytes, valid until this buffer is used again or closed
+     * @throws IOException if the characters cannot be encoded
+     */
+    public ByteBuffer encode(HtmlBuffer html) throws IOException {
+        return encode(html.chars(), 0, html.length());
+    }
+
+    /**
+     * encode characters, replacing the previous content of this buffer
+     *
+     * @param chars characters to encode
+     * @param off   index of the first character
+     * @param len   number of characters
+     * @return the encoded bytes, valid until this buffer is used again or closed
+     * @throws IOException if the characters cannot be encoded
+     */
+    public ByteBuffer encode(char[] chars, int off, int len) throws IOException {
+        CharsetEncoder enc = encoder.get().reset();
+        // sized for the worst case, so that the content is encoded in one pass
+        long required = (long) Math.ceil(len * (double) enc.maxBytesPerChar());
+        if (required > this.bytes.capacity())
+            this.bytes = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE,
+                    Math.max(required, 2L * this.bytes.capacity())));
+        this.bytes.clear();
+        CoderResult result = enc.encode(CharBuffer.wrap(chars, off, len), this.bytes, true);
+        if (!result.isUnderflow())
+            result.throwException();
+        result = enc.flush(this.bytes);
+        if (!result.isUnderflow())
+            result.throwException();
+        this.bytes.flip();
+        return this.bytes;
+    }
+
+    /**
+     * encode an html buffer into a new read-only buffer of exactly its size, for output
+     * that is written many times
+     *
+     * @param html the characters to encode
+     * @return the encoded bytes; use a {@link ByteBuffer#duplicate()} for each write
+     * @throws IOException if the characters cannot be encoded
+     */
+    public static ByteBuffer encodeShared(HtmlBuffer html) throws IOException {
+        try (Utf8Buffer buffer = acquire()) {
+            ByteBuffer encoded = buffer.encode(html);
+            ByteBuffer copy = ByteBuffer.allocateDirect(encoded.remaining());
+            copy.put(encoded).flip();
+            return copy.asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * returns the buffer to the pool of the current thread
+     */
+    @Override
+    public void close() {
+        if (!this.inUse) return;
+        this.inUse = false;
+        this.bytes.clear();
+        if (this.bytes.capacity() > MAX_POOLED_CAPACITY)
+            this.bytes = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+        pool.get().push(this);
+    }
+}
@@ -5,12 +5,23 @@ import java.util.List;
 
 public class ArticleListPage extends PaginatedPage {
     final private List<ArticlePreview> articles;
+    private final String feedPath;
 
 
     public ArticleListPage(SiteData siteData, String pageTitle, boolean hasPagination, Pagination pagination,
                            List<ArticlePreview> articles) {
+        this(siteData, pageTitle, hasPagination, pagination, articles, null);
+    }
+
+    /**
+     * @param feedPath path of the Atom feed of the listed articles relative to the root of the site,
+     *                 linked in the head of the page; null if there is none
+     */
+    public ArticleListPage(SiteData siteData, String pageTitle, boolean hasPagination, Pagination pagination,
+                           List<ArticlePreview> articles, String feedPath) {
         super(siteData, pageTitle, Collections.emptyList(), hasPagination, pagination);
         this.articles = articles;
+        this.feedPath = feedPath;
     }
 
     public String getTemplate() {
@@ -21,5 +32,9 @@ public class ArticleListPage extends PaginatedPage {
         return articles;
     }
 
+    public String getFeedPath() {
+        return this.feedPath;
+    }
+
 
 }
@@ -1,21 +1,62 @@
 package edu.cmu.webgen.rendering.data;
 
+import edu.cmu.webgen.rendering.AppendableWriter;
+import edu.cmu.webgen.rendering.HtmlBuffer;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A fragment of an entry's page. The HTML of the fragment is not stored but produced
+ * when the page is rendered and written directly into the page, so that fragments are
+ * never held in memory besides the page itself.
+ */
 public final class ContentFragment {
     private final @Nullable String title;
-    private final String fragmentContent;
+    private final Content content;
 
-    public ContentFragment(@Nullable String title, String fragmentContent) {
+    public ContentFragment(@Nullable String title, Content content) {
         this.title = title;
-        this.fragmentContent = fragmentContent;
+        this.content = content;
+    }
+
+    public ContentFragment(@Nullable String title, String fragmentContent) {
+        this(title, out -> out.write(fragmentContent));
     }
 
     public @Nullable String getTitle() {
         return this.title;
     }
 
+    /**
+     * writes the HTML of this fragment
+     *
+     * @param out writer into which the HTML is written
+     * @throws IOException if rendering the fragment fails
+     */
+    public void render(AppendableWriter out) throws IOException {
+        this.content.render(out);
+    }
+
+    /**
+     * HTML of this fragment as a String; templates should stream the fragment with the
+     * {@code fragmentContent} helper instead
+     */
     public String getFragmentContent() {
-        return this.fragmentContent;
+        try (HtmlBuffer out = HtmlBuffer.acquire()) {
+            render(new AppendableWriter(out));
+            return out.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * produces the HTML of a fragment on demand
+     */
+    @FunctionalInterface
+    public interface Content {
+        void render(AppendableWriter out) throws IOException;
     }
 }
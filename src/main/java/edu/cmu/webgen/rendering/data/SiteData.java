@@ -1,7 +1,15 @@
 package edu.cmu.webgen.rendering.data;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
+/**
+ * site-wide data shown in the frame of every page
+ * <p>
+ * chromeHeader is the pre-rendered static part of the frame (head, title and navigation),
+ * which only depends on the relative path of a page; it is kept encoded as UTF-8 and written
+ * before the rendered page template
+ */
 public record SiteData(String relPath, String projectTitle, String organization, List<SiteLink> headers,
-                       String lastUpdated) {
+                       String lastUpdated, ByteBuffer chromeHeader) {
 }
@@ -0,0 +1,278 @@
+package edu.cmu.webgen.server;
+
+import edu.cmu.webgen.output.Precompressor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Simple load generator measuring how many requests per second a server answers for the
+ * typical mix of requests to a generated site.
+ * <p>
+ * Each connection repeatedly requests every page of the site in random order, accepting gzip
+ * like browsers do. Stylesheets, scripts and other assets are requested with the ETag of an
+ * earlier response, like by a visitor whose browser revalidates its cached copy. Connections
+ * are persistent, and the next request on a connection is only sent after the previous
+ * response was read completely.
+ */
+public class LoadGenerator {
+
+    public static final int DEFAULT_CONNECTIONS = 2 * Runtime.getRuntime().availableProcessors();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InetSocketAddress address;
+    private final List<String> paths;
+
+    /**
+     * @param address server to send requests to
+     * @param paths   absolute paths to request, such as {@code /index.html}
+     */
+    public LoadGenerator(InetSocketAddress address, List<String> paths) {
+        if (paths.isEmpty())
+            throw new IllegalArgumentException("No paths to request");
+        this.address = address;
+        this.paths = List.copyOf(paths);
+    }
+
+    /**
+     * the files of a generated site to request: all files except precompressed versions and
+     * manifests of the build
+     *
+     * @param root directory of the generated site
+     * @return absolute paths, URL-encoded
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<String> getPageMix(File root) throws IOException {
+        Path rootPath = root.toPath();
+        try (Stream<Path> files = Files.walk(rootPath)) {
+            return files.filter(Files::isRegularFile)
+                    .map(file -> "/" + rootPath.relativize(file).toString().replace(File.separatorChar, '/'))
+                    .filter(path -> !path.endsWith(Precompressor.GZIP_SUFFIX) && !path.contains("/.webgen"))
+                    .sorted().map(LoadGenerator::encode).toList();
+        }
+    }
+
+    private static String encode(String path) {
+        try {
+            return new URI(null, null, path, null).toASCIIString();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid path " + path, e);
+        }
+    }
+
+    /**
+     * results of a run
+     *
+     * @param requests    number of answered requests
+     * @param notModified number of requests answered with 304
+     * @param errors      number of requests answered with an error status
+     * @param bytes       number of bytes received, including headers
+     * @param duration    time of the run
+     * @param latencies   sorted time from sending each request to reading its response, in nanoseconds
+     */
+    public record Result(long requests, long notModified, long errors, long bytes, Duration duration,
+                         long[] latencies) {
+
+        public double requestsPerSecond() {
+            return this.requests / (this.duration.toNanos() / 1e9);
+        }
+
+        /**
+         * latency of the given percentile of requests
+         *
+         * @param percentile between 0 and 100
+         * @return latency in milliseconds
+         */
+        public double latency(double percentile) {
+            if (this.latencies.length == 0)
+                return 0;
+            int index = (int) Math.ceil(percentile / 100 * this.latencies.length) - 1;
+            return this.latencies[Math.max(0, Math.min(index, this.latencies.length - 1))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = this.duration.toNanos() / 1e9;
+            return """
+                    %d requests in %.1f s: %.0f requests/s, %.1f MB/s
+                    %d not modified, %d errors
+                    latency: median %.2f ms, 99th percentile %.2f ms, max %.2f ms"""
+                    .formatted(this.requests, seconds, requestsPerSecond(), this.bytes / seconds / 1e6,
+                            this.notModified, this.errors, latency(50), latency(99), latency(100));
+        }
+    }
+
+    /**
+     * send requests for the given time
+     *
+     * @param connections number of concurrent connections
+     * @param duration    time to send requests for
+     * @return the results
+     * @throws IOException if the server cannot be reached or closes a connection unexpectedly
+     */
+    public Result run(int connections, Duration duration) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        try {
+            List<Future<Worker>> results = new ArrayList<>();
+            for (int i = 0; i < connections; i++)
+                results.add(executor.submit(() -> {
+                    Worker worker = new Worker();
+                    worker.run(end);
+                    return worker;
+                }));
+            long requests = 0, notModified = 0, errors = 0, bytes = 0;
+            List<Worker> workers = new ArrayList<>();
+            for (Future<Worker> result : results) {
+                Worker worker = result.get();
+                workers.add(worker);
+                requests += worker.requests;
+                notModified += worker.notModified;
+                errors += worker.errors;
+                bytes += worker.bytes;
+            }
+            long[] latencies = new long[(int) requests];
+            int offset = 0;
+            for (Worker worker : workers) {
+                System.arraycopy(worker.latencies, 0, latencies, offset, (int) worker.requests);
+                offset += (int) worker.requests;
+            }
+            Arrays.sort(latencies);
+            return new Result(requests, notModified, errors, bytes, Duration.ofNanos(System.nanoTime() - start),
+                    latencies);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause)
+                throw cause;
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * requests over a single connection
+     */
+    private class Worker {
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        private final Map<String, String> etags = new HashMap<>();
+        private SocketChannel channel = null;
+        long requests = 0, notModified = 0, errors = 0, bytes = 0;
+        long[] latencies = new long[1024];
+
+        void run(long end) throws IOException {
+            List<String> order = new ArrayList<>(LoadGenerator.this.paths);
+            Random random = new Random();
+            try {
+                while (System.nanoTime() < end) {
+                    Collections.shuffle(order, random);
+                    for (String path : order) {
+                        if (System.nanoTime() >= end)
+                            break;
+                        request(path);
+                    }
+                }
+            } finally {
+                if (this.channel != null)
+                    this.channel.close();
+            }
+        }
+
+        private void request(String path) throws IOException {
+            if (this.channel == null) {
+                this.channel = SocketChannel.open(LoadGenerator.this.address);
+                this.channel.socket().setTcpNoDelay(true);
+                this.in.clear();
+            }
+            StringBuilder request = new StringBuilder("GET ").append(path).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(LoadGenerator.this.address.getHostString()).append("\r\n")
+                    .append("Accept-Encoding: gzip\r\n");
+            String etag = this.etags.get(path);
+            if (etag != null)
+                request.append("If-None-Match: ").append(etag).append("\r\n");
+            request.append("\r\n");
+
+            long sent = System.nanoTime();
+            ByteBuffer out = ByteBuffer.wrap(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+            while (out.hasRemaining())
+                this.channel.write(out);
+
+            int headEnd;
+            while ((headEnd = findEndOfHead()) < 0) {
+                if (!this.in.hasRemaining())
+                    throw new IOException("Response head too large for " + path);
+                if (this.channel.read(this.in) < 0)
+                    throw new IOException("Connection closed before response to " + path);
+            }
+            String[] head = new String(this.in.array(), 0, headEnd, StandardCharsets.ISO_8859_1).split("\r\n");
+            String[] statusLine = head[0].split(" ");
+            int status = statusLine.length > 1 ? Integer.parseInt(statusLine[1]) : 0;
+            long contentLength = 0;
+            boolean close = false;
+            for (int i = 1; i < head.length; i++) {
+                String header = head[i].toLowerCase(Locale.ROOT);
+                if (header.startsWith("content-length:"))
+                    contentLength = Long.parseLong(header.substring("content-length:".length()).trim());
+                else if (header.startsWith("connection:"))
+                    close = header.contains("close");
+                else if (header.startsWith("etag:") && !path.endsWith(".html"))
+                    this.etags.put(path, head[i].substring("etag:".length()).trim());
+            }
+            skip(headEnd + 4);
+            skip(contentLength);
+            record(System.nanoTime() - sent);
+            this.bytes += headEnd + 4 + contentLength;
+            if (status == 304)
+                this.notModified++;
+            else if (status >= 400 || status < 200)
+                this.errors++;
+            if (close) {
+                this.channel.close();
+                this.channel = null;
+            }
+        }
+
+        private int findEndOfHead() {
+            byte[] bytes = this.in.array();
+            for (int i = 0; i + 3 < this.in.position(); i++)
+                if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n')
+                    return i;
+            return -1;
+        }
+
+        /**
+         * drop the given number of bytes of the response, reading them first where needed
+         */
+        private void skip(long count) throws IOException {
+            while (count > 0) {
+                if (this.in.position() == 0 && this.channel.read(this.in) < 0)
+                    throw new IOException("Connection closed within response");
+                int dropped = (int) Math.min(count, this.in.position());
+                this.in.flip().position(dropped);
+                this.in.compact();
+                count -= dropped;
+            }
+        }
+
+        private void record(long latency) {
+            if (this.requests == this.latencies.length)
+                this.latencies = Arrays.copyOf(this.latencies, this.latencies.length * 2);
+            this.latencies[(int) this.requests++] = latency;
+        }
+    }
+}
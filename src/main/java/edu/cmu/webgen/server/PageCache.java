@@ -0,0 +1,46 @@
+package edu.cmu.webgen.server;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of rendered pages, bounded by the size of the pages it holds; when the bound is
+ * exceeded, the least recently used pages are evicted.
+ */
+class PageCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, byte[]> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    /**
+     * @param maxBytes maximum total size of the cached pages
+     */
+    PageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized @Nullable byte[] get(String path) {
+        return this.pages.get(path);
+    }
+
+    synchronized void put(String path, byte[] content) {
+        byte[] previous = this.pages.put(path, content);
+        if (previous != null)
+            this.bytes -= previous.length;
+        this.bytes += content.length;
+        Iterator<Map.Entry<String, byte[]>> eldest = this.pages.entrySet().iterator();
+        while (this.bytes > this.maxBytes && eldest.hasNext()) {
+            this.bytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    synchronized void clear() {
+        this.pages.clear();
+        this.bytes = 0;
+    }
+}
@@ -0,0 +1,304 @@
+package edu.cmu.webgen.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.cmu.webgen.WebGen;
+import edu.cmu.webgen.WebGenArgs;
+import edu.cmu.webgen.output.OutputSink;
+import edu.cmu.webgen.parser.ProjectParser;
+import edu.cmu.webgen.project.Project;
+import edu.cmu.webgen.project.ProjectFormatException;
+import edu.cmu.webgen.rendering.Renderer;
+import edu.cmu.webgen.rendering.TemplateEngine;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Server rendering the pages of a project on demand, for previewing changes without rendering
+ * the whole site.
+ * <p>
+ * The project is loaded once; the stylesheet, media, sitemap and feeds are published into memory
+ * (media by reference to their source files). Each requested page is rendered on its own with the
+ * options of a full build and kept in a cache of recently used pages; only the service worker of
+ * {@code --offline} is left out, so that the browser does not keep outdated previews. The project
+ * directory is watched: on any change the project is loaded again and the cache is cleared.
+ */
+public class PreviewServer {
+
+    private static final long CACHE_SIZE = 64L * 1024 * 1024;
+    // changes arriving within this time are handled by a single reload
+    private static final long RELOAD_DELAY_MS = 200;
+    private static final Map<String, String> CONTENT_TYPES = Map.ofEntries(
+            Map.entry("html", "text/html; charset=UTF-8"),
+            Map.entry("css", "text/css; charset=UTF-8"),
+            Map.entry("js", "text/javascript; charset=UTF-8"),
+            Map.entry("json", "application/json"),
+            Map.entry("xml", "application/xml"),
+            Map.entry("txt", "text/plain; charset=UTF-8"),
+            Map.entry("jpg", "image/jpeg"),
+            Map.entry("jpeg", "image/jpeg"),
+            Map.entry("png", "image/png"),
+            Map.entry("gif", "image/gif"),
+            Map.entry("svg", "image/svg+xml"),
+            Map.entry("webp", "image/webp"),
+            Map.entry("mp4", "video/mp4"),
+            Map.entry("webm", "video/webm"),
+            Map.entry("mov", "video/quicktime"));
+
+    private final WebGenArgs options;
+    private final PageCache cache = new PageCache(CACHE_SIZE);
+    private volatile State state;
+    private @Nullable HttpServer server = null;
+    private @Nullable ExecutorService executor = null;
+    private @Nullable Thread watcher = null;
+
+    /**
+     * a loaded project with the renderer and the output for its pages
+     */
+    private record State(Project project, Renderer renderer, PreviewSink sink) {
+    }
+
+    /**
+     * load the project
+     *
+     * @param options options of the rendering, including the project directory
+     * @throws IOException            if the project cannot be read
+     * @throws ProjectFormatException if the project is not well-formed
+     */
+    public PreviewServer(WebGenArgs options) throws IOException, ProjectFormatException {
+        this.options = options;
+        this.state = load();
+    }
+
+    /**
+     * start serving and watching the project directory; returns immediately, the server runs
+     * on its own threads
+     *
+     * @param port port to listen on, 0 for any free port
+     * @return the port the server listens on
+     * @throws IOException if the server cannot be started
+     */
+    public int start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::handle);
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        server.setExecutor(this.executor);
+        server.start();
+        this.server = server;
+        this.watcher = new Thread(this::watch, "webgen-watcher");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+        System.out.println("Previewing %s at http://localhost:%d/".formatted(
+                this.options.getProjectSourceDirectory(), server.getAddress().getPort()));
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * stop serving and watching the project directory
+     */
+    public void stop() {
+        if (this.server != null)
+            this.server.stop(0);
+        if (this.executor != null)
+            this.executor.shutdownNow();
+        if (this.watcher != null)
+            this.watcher.interrupt();
+    }
+
+    private State load() throws IOException, ProjectFormatException {
+        // ids are counted per title, so a project loaded again must start counting anew
+        WebGen.resetIds();
+        Project project = new ProjectParser(this.options.isStreaming(), this.options.isReproducible())
+                .loadProject(this.options.getProjectSourceDirectory());
+        PreviewSink sink = new PreviewSink();
+        Renderer renderer = new Renderer(sink, this.options.getArticleSorting(), this.options.isReproducible(),
+                this.options.isAnchoredPagination(), null, this.options.isInlineCriticalCss(),
+                this.options.getCacheDirectory(), this.options.isResponsiveImages(), this.options.isYoutubeFacade(), this.options.getSiteUrl(),
+                this.options.getFeedSize(), false,
+                new TemplateEngine(this.options.isMinify(), this.options.isFingerprint()));
+        renderer.prepareSinglePages(project);
+        return new State(project, renderer, sink);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+            String path = exchange.getRequestURI().getPath().substring(1);
+            if (path.isEmpty() || path.endsWith("/"))
+                path += "index.html";
+
+            byte[] content = this.cache.get(path);
+            State current = this.state;
+            if (content == null)
+                content = current.sink.files.get(path);
+            if (content == null) {
+                File published = current.sink.published.get(path);
+                if (published != null) {
+                    sendFile(exchange, path, published);
+                    return;
+                }
+            }
+            if (content == null && (path.equals("index.html") || path.endsWith("/index.html"))) {
+                try {
+                    content = render(current, path);
+                } catch (RuntimeException e) {
+                    // such as a document that cannot be read again, see ProjectParser
+                    System.err.println("Cannot render /%s: %s".formatted(path, e));
+                    sendError(exchange, 500, "Cannot render /%s: %s".formatted(path, e.getMessage()));
+                    return;
+                }
+            }
+            if (content == null) {
+                sendError(exchange, 404, "Not found: /" + path);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", getContentType(path));
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            boolean head = exchange.getRequestMethod().equals("HEAD");
+            exchange.sendResponseHeaders(200, head ? -1 : content.length);
+            if (!head)
+                exchange.getResponseBody().write(content);
+        }
+    }
+
+    /**
+     * render a page into the cache
+     *
+     * @return the page, null if there is no such page
+     */
+    private @Nullable byte[] render(State current, String path) throws IOException {
+        String pagePath = "/" + path.substring(0, path.length() - "index.html".length());
+        // the renderer keeps state while rendering, so it renders one page at a time
+        synchronized (current) {
+            String outputPath = current.renderer.renderSinglePage(current.project, pagePath);
+            if (outputPath == null)
+                return null;
+            byte[] content = current.sink.files.remove(outputPath);
+            // the project may have been reloaded while rendering, then the page is outdated
+            if (content != null && current == this.state)
+                this.cache.put(path, content);
+            return content;
+        }
+    }
+
+    private static void sendFile(HttpExchange exchange, String path, File file) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", getContentType(path));
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, file.length());
+        try (OutputStream out = exchange.getResponseBody()) {
+            Files.copy(file.toPath(), out);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    static String getContentType(String path) {
+        int dot = path.lastIndexOf('.');
+        String extension = dot < 0 ? "" : path.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return CONTENT_TYPES.getOrDefault(extension, "application/octet-stream");
+    }
+
+    /**
+     * watch the project directory and load the project again when anything changes
+     */
+    private void watch() {
+        Path root = this.options.getProjectSourceDirectory().toPath();
+        try (WatchService watchService = root.getFileSystem().newWatchService()) {
+            register(watchService, root);
+            while (true) {
+                WatchKey key = watchService.take();
+                // wait for related changes, such as an editor saving several files
+                Thread.sleep(RELOAD_DELAY_MS);
+                do {
+                    key.pollEvents();
+                    key.reset();
+                } while ((key = watchService.poll()) != null);
+                try {
+                    this.state = load();
+                    this.cache.clear();
+                    // new directories are watched as well
+                    register(watchService, root);
+                    System.out.println("Reloaded " + root);
+                } catch (IOException | ProjectFormatException e) {
+                    System.err.println("Cannot reload project, still serving the previous version: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot watch project directory, changes are not shown: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void register(WatchService watchService, Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path dir : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator)
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+    }
+
+    /**
+     * keeps written files in memory and published files as references to their sources
+     */
+    private static class PreviewSink implements OutputSink {
+        final Map<String, byte[]> files = new ConcurrentHashMap<>();
+        final Map<String, File> published = new ConcurrentHashMap<>();
+
+        @Override
+        public boolean write(String path, ByteBuffer... chunks) {
+            int length = 0;
+            for (ByteBuffer chunk : chunks)
+                length += chunk.remaining();
+            byte[] content = new byte[length];
+            int offset = 0;
+            for (ByteBuffer chunk : chunks) {
+                int len = chunk.remaining();
+                chunk.duplicate().get(content, offset, len);
+                offset += len;
+            }
+            this.files.put(path, content);
+            return true;
+        }
+
+        @Override
+        public boolean publish(String path, File source) {
+            this.published.put(path, source);
+            return true;
+        }
+
+        @Override
+        public boolean delete(String path) {
+            return this.files.remove(path) != null | this.published.remove(path) != null;
+        }
+
+        @Override
+        public void createDirectories(Collection<String> directories) {
+        }
+    }
+}
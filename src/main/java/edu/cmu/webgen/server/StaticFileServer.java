@@ -0,0 +1,372 @@
+package edu.cmu.webgen.server;
+
+import edu.cmu.webgen.output.ContentHash;
+import edu.cmu.webgen.output.Precompressor;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Server for a generated site, for testing how the site behaves when it is published.
+ * <p>
+ * Files are sent with {@link FileChannel#transferTo}, which lets the operating system copy them
+ * to the socket without passing them through the server. Responses carry a strong ETag derived
+ * from the content of the file, and requests with a matching {@code If-None-Match} are answered
+ * with 304. If the client accepts gzip and a precompressed {@code .gz} file exists next to the
+ * requested file (see {@link Precompressor}), the compressed file is sent.
+ * The size, modification time and hash of files are cached and only checked against the file
+ * system about once per second.
+ * <p>
+ * The server speaks just enough HTTP/1.1 for browsers and {@link LoadGenerator}: GET and HEAD
+ * requests with persistent connections, one thread per connection. Files and directories whose
+ * names start with a dot, such as the manifests of earlier builds, are not served.
+ */
+public class StaticFileServer {
+
+    private static final long METADATA_TTL_MS = 1000;
+    private static final int MAX_REQUEST_HEAD = 16 * 1024;
+    private static final int HASH_LENGTH = 16;
+
+    private final Path root;
+    private final Map<Path, FileInfo> metadata = new ConcurrentHashMap<>();
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "webgen-static");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private @Nullable ServerSocketChannel server = null;
+
+    /**
+     * @param root directory of the generated site
+     */
+    public StaticFileServer(File root) {
+        this.root = root.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * cached information about a path
+     *
+     * @param exists       whether there is a file or directory at the path
+     * @param directory    whether the path is a directory
+     * @param size         size in bytes
+     * @param lastModified modification time in milliseconds
+     * @param etag         quoted entity tag derived from the content
+     * @param checked      time of the last check against the file system
+     */
+    private record FileInfo(boolean exists, boolean directory, long size, long lastModified, String etag,
+                            long checked) {
+    }
+
+    /**
+     * start accepting connections; returns immediately, the server runs on its own threads
+     *
+     * @param port port to listen on, 0 for any free port
+     * @return the port the server listens on
+     * @throws IOException if the server cannot be started
+     */
+    public int start(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(port), 1024);
+        this.server = channel;
+        Thread acceptor = new Thread(() -> {
+            while (channel.isOpen()) {
+                try {
+                    SocketChannel connection = channel.accept();
+                    this.connections.execute(() -> serve(connection));
+                } catch (IOException e) {
+                    if (channel.isOpen())
+                        System.err.println("Cannot accept connection: " + e.getMessage());
+                }
+            }
+        }, "webgen-static-accept");
+        acceptor.start();
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * stop accepting connections and close open connections
+     */
+    public void stop() throws IOException {
+        if (this.server != null)
+            this.server.close();
+        this.connections.shutdownNow();
+    }
+
+    private void serve(SocketChannel connection) {
+        try (connection) {
+            connection.socket().setTcpNoDelay(true);
+            ByteBuffer in = ByteBuffer.allocate(MAX_REQUEST_HEAD);
+            while (true) {
+                Request request = readRequest(connection, in);
+                if (request == null || !respond(connection, request))
+                    return;
+            }
+        } catch (IOException e) {
+            // the client closed the connection
+        }
+    }
+
+    /**
+     * a request: method, path and headers with lower-case names
+     */
+    private record Request(String method, String target, boolean keepAlive, Map<String, String> headers) {
+    }
+
+    /**
+     * read the head of the next request; bytes of further requests remain in the buffer
+     *
+     * @return the request, null if the connection is to be closed: the client closed it, or the
+     * request head is too large or malformed, which is answered with an error status first
+     */
+    private static @Nullable Request readRequest(SocketChannel connection, ByteBuffer in) throws IOException {
+        int end;
+        while ((end = findEndOfHead(in)) < 0) {
+            if (!in.hasRemaining()) {
+                sendStatus(connection, 431, "Request Header Fields Too Large", false, null);
+                return null;
+            }
+            if (connection.read(in) < 0)
+                return null;
+        }
+        String head = new String(in.array(), 0, end, StandardCharsets.ISO_8859_1);
+        int consumed = end + 4;
+        in.flip().position(consumed);
+        in.compact();
+
+        String[] lines = head.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            sendStatus(connection, 400, "Bad Request", false, null);
+            return null;
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0)
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+        }
+        String connectionHeader = headers.getOrDefault("connection", "").toLowerCase(Locale.ROOT);
+        boolean keepAlive = requestLine[2].equals("HTTP/1.1") ? !connectionHeader.equals("close") :
+                connectionHeader.equals("keep-alive");
+        return new Request(requestLine[0], requestLine[1], keepAlive, headers);
+    }
+
+    private static int findEndOfHead(ByteBuffer in) {
+        byte[] bytes = in.array();
+        for (int i = 0; i + 3 < in.position(); i++)
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n')
+                return i;
+        return -1;
+    }
+
+    /**
+     * answer a request
+     *
+     * @return true if the connection stays open for further requests
+     */
+    private boolean respond(SocketChannel connection, Request request) throws IOException {
+        boolean head = request.method().equals("HEAD");
+        if (!head && !request.method().equals("GET")) {
+            sendStatus(connection, 405, "Method Not Allowed", false, "Allow: GET, HEAD");
+            return false;
+        }
+        Path file = resolve(request.target());
+        if (file == null) {
+            sendStatus(connection, 400, "Bad Request", request.keepAlive(), null);
+            return request.keepAlive();
+        }
+        FileInfo info = getInfo(file);
+        if (!info.exists() || isHidden(file)) {
+            sendStatus(connection, 404, "Not Found", request.keepAlive(), null);
+            return request.keepAlive();
+        }
+        if (info.directory()) {
+            // pages link relative to their directory, so directories are only served with a trailing slash
+            int query = request.target().indexOf('?');
+            String location = query < 0 ? request.target() + "/" :
+                    request.target().substring(0, query) + "/" + request.target().substring(query);
+            sendStatus(connection, 301, "Moved Permanently", request.keepAlive(), "Location: " + location);
+            return request.keepAlive();
+        }
+
+        String contentType = PreviewServer.getContentType(file.getFileName().toString());
+        FileInfo gzipInfo = getInfo(file.resolveSibling(file.getFileName() + Precompressor.GZIP_SUFFIX));
+        boolean hasGzip = gzipInfo.exists() && !gzipInfo.directory();
+        boolean sendGzip = hasGzip && acceptsGzip(request.headers().get("accept-encoding"));
+        if (sendGzip) {
+            file = file.resolveSibling(file.getFileName() + Precompressor.GZIP_SUFFIX);
+            info = gzipInfo;
+        }
+
+        StringBuilder response = new StringBuilder();
+        boolean notModified = matches(request.headers().get("if-none-match"), info.etag());
+        response.append(notModified ? "HTTP/1.1 304 Not Modified\r\n" : "HTTP/1.1 200 OK\r\n");
+        response.append("ETag: ").append(info.etag()).append("\r\n");
+        response.append("Cache-Control: no-cache\r\n");
+        if (hasGzip)
+            response.append("Vary: Accept-Encoding\r\n");
+        if (!notModified) {
+            response.append("Content-Type: ").append(contentType).append("\r\n");
+            if (sendGzip)
+                response.append("Content-Encoding: gzip\r\n");
+            response.append("Content-Length: ").append(info.size()).append("\r\n");
+        }
+        response.append(request.keepAlive() ? "Connection: keep-alive\r\n" : "Connection: close\r\n");
+        response.append("\r\n");
+        writeFully(connection, ByteBuffer.wrap(response.toString().getBytes(StandardCharsets.ISO_8859_1)));
+
+        if (!notModified && !head) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long position = 0;
+                while (position < info.size()) {
+                    long sent = channel.transferTo(position, info.size() - position, connection);
+                    // the file changed after its size was cached; the response cannot be completed
+                    if (sent <= 0 && channel.size() <= position)
+                        throw new IOException("File shrunk while sending: " + file);
+                    position += sent;
+                }
+            }
+        }
+        return request.keepAlive();
+    }
+
+    /**
+     * whether an If-None-Match header matches an entity tag, using weak comparison
+     */
+    private static boolean matches(@Nullable String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null)
+            return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null)
+            return false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip"))
+                return parts.length == 1 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+        }
+        return false;
+    }
+
+    /**
+     * the file for a request target; directories refer to their index.html
+     *
+     * @return the file, null if the target is not a valid path within the root directory, such as a
+     * path with a malformed escape, a NUL character or too many "..", which is a bad request
+     */
+    private @Nullable Path resolve(String target) {
+        int query = target.indexOf('?');
+        String path = query < 0 ? target : target.substring(0, query);
+        try {
+            path = URLDecoder.decode(path.replace("+", "%2B"), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!path.startsWith("/"))
+            return null;
+        if (path.endsWith("/"))
+            path += "index.html";
+        Path file;
+        try {
+            file = this.root.resolve(path.substring(1)).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        return file.startsWith(this.root) ? file : null;
+    }
+
+    /**
+     * whether a file within the root directory or one of its parents has a name starting with a dot;
+     * such files hold state of the generator, such as manifests and caches, and are not part of the site
+     */
+    private boolean isHidden(Path file) {
+        for (Path name : this.root.relativize(file))
+            if (name.toString().startsWith("."))
+                return true;
+        return false;
+    }
+
+    /**
+     * information about a path, cached
+     *
+     * @param file absolute path
+     * @return the information, also for missing files
+     */
+    private FileInfo getInfo(Path file) throws IOException {
+        long now = System.currentTimeMillis();
+        FileInfo cached = this.metadata.get(file);
+        if (cached != null && now - cached.checked() < METADATA_TTL_MS)
+            return cached;
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            attributes = null;
+        }
+        FileInfo info;
+        if (attributes == null)
+            info = new FileInfo(false, false, 0, 0, "", now);
+        else if (attributes.isDirectory())
+            info = new FileInfo(true, true, 0, 0, "", now);
+        else {
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            // the content is only hashed again if the file changed
+            String etag = cached != null && cached.size() == size && cached.lastModified() == lastModified ?
+                    cached.etag() : "\"" + ContentHash.of(file).substring(0, HASH_LENGTH) + "\"";
+            info = new FileInfo(true, false, size, lastModified, etag, now);
+        }
+        this.metadata.put(file, info);
+        return info;
+    }
+
+    /**
+     * send a response without content of its own
+     *
+     * @param header an additional header line without line break, such as {@code Location: /p/},
+     *               null for none
+     */
+    private static void sendStatus(SocketChannel connection, int status, String reason, boolean keepAlive,
+                                   @Nullable String header) throws IOException {
+        String body = status + " " + reason + "\n";
+        String response = "HTTP/1.1 " + status + " " + reason + "\r\n"
+                + (header != null ? header + "\r\n" : "")
+                + "Content-Type: text/plain; charset=UTF-8\r\n"
+                + "Content-Length: " + body.length() + "\r\n"
+                + (keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n")
+                + "\r\n" + body;
+        writeFully(connection, ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    private static void writeFully(SocketChannel connection, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            connection.write(buffer);
+    }
+}
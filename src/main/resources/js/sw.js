@@ -0,0 +1,84 @@
+// Service worker of the site: keeps the files listed in the precache manifest available offline.
+// Files are cached by path and revision, so a new manifest only downloads files that changed.
+const CACHE = 'webgen-precache';
+const MANIFEST_URL = new URL('__PRECACHE_MANIFEST__', self.registration.scope).href;
+let precached = null;
+
+// absolute url of each precached file -> cache key of its current revision
+function readManifest(response) {
+  return response.json().then(manifest => new Map(manifest.files.map(file => [
+    new URL(file.url, self.registration.scope).href,
+    new URL(file.url + '?__revision=' + file.revision, self.registration.scope).href])));
+}
+
+function precachedFiles() {
+  if (!precached)
+    precached = caches.open(CACHE)
+      .then(cache => cache.match(MANIFEST_URL))
+      .then(response => response || fetch(MANIFEST_URL))
+      .then(readManifest)
+      .catch(() => {
+        precached = null;
+        return new Map();
+      });
+  return precached;
+}
+
+self.addEventListener('install', event => {
+  event.waitUntil((async () => {
+    const cache = await caches.open(CACHE);
+    const response = await fetch(MANIFEST_URL, {cache: 'no-cache'});
+    if (!response.ok)
+      throw new Error('Cannot load ' + MANIFEST_URL);
+    await cache.put(MANIFEST_URL, response.clone());
+    for (const [url, key] of await readManifest(response)) {
+      if (await cache.match(key))
+        continue;
+      const file = await fetch(url, {cache: 'reload'});
+      if (!file.ok)
+        throw new Error('Cannot precache ' + url);
+      await cache.put(key, file);
+    }
+    await self.skipWaiting();
+  })());
+});
+
+self.addEventListener('activate', event => {
+  event.waitUntil((async () => {
+    const cache = await caches.open(CACHE);
+    const keys = new Set((await precachedFiles()).values());
+    for (const request of await cache.keys())
+      if (request.url !== MANIFEST_URL && !keys.has(request.url))
+        await cache.delete(request);
+    await self.clients.claim();
+  })());
+});
+
+self.addEventListener('fetch', event => {
+  if (event.request.method !== 'GET')
+    return;
+  const url = new URL(event.request.url);
+  if (url.origin !== self.location.origin)
+    return;
+  url.search = '';
+  url.hash = '';
+  if (url.pathname.endsWith('/'))
+    url.pathname += 'index.html';
+  event.respondWith((async () => {
+    const key = (await precachedFiles()).get(url.href);
+    const cached = key && await caches.match(key);
+    if (cached)
+      return cached;
+    try {
+      return await fetch(event.request);
+    } catch (e) {
+      // offline: show the homepage instead of pages that were not precached
+      const home = event.request.mode === 'navigate' &&
+        (await precachedFiles()).get(new URL('index.html', self.registration.scope).href);
+      const fallback = home && await caches.match(home);
+      if (fallback)
+        return fallback;
+      throw e;
+    }
+  })());
+});
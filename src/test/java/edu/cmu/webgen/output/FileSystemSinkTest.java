@@ -0,0 +1,122 @@
+package edu.cmu.webgen.output;
+
+import edu.cmu.webgen.rendering.TemplateEngine;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FileSystemSinkTest {
+
+    // a modification time far from now, to see whether a file was written again
+    private static final long OLD_TIME = 1_000_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File root;
+    private FileSystemSink sink;
+
+    @Before
+    public void createSink() {
+        this.root = this.folder.getRoot();
+        this.sink = new FileSystemSink(this.root);
+    }
+
+    @Test
+    public void testUnchangedFileIsNotWritten() throws IOException {
+        assertTrue(this.sink.write("p/a/index.html", bytes("<h1>"), bytes("A</h1>")));
+        File file = new File(this.root, "p/a/index.html");
+        assertTrue(file.setLastModified(OLD_TIME));
+
+        assertFalse(this.sink.write("p/a/index.html", bytes("<h1>A</h1>")));
+        assertEquals(OLD_TIME, file.lastModified());
+    }
+
+    @Test
+    public void testChangedFileIsWritten() throws IOException {
+        this.sink.write("index.html", bytes("<h1>A</h1>"));
+        File file = new File(this.root, "index.html");
+        assertTrue(file.setLastModified(OLD_TIME));
+
+        // same length, different content
+        assertTrue(this.sink.write("index.html", bytes("<h1>B</h1>")));
+        assertEquals("<h1>B</h1>", read(file));
+        assertNotEquals(OLD_TIME, file.lastModified());
+        // shorter content truncates the file
+        assertTrue(this.sink.write("index.html", bytes("<p>")));
+        assertEquals("<p>", read(file));
+    }
+
+    @Test
+    public void testStreamReplacesFile() throws IOException {
+        this.sink.write("sitemap.xml", bytes("old content that is longer"));
+        this.sink.stream("sitemap.xml", out -> out.write("<urlset/>".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("<urlset/>", read(new File(this.root, "sitemap.xml")));
+        assertEquals(List.of("sitemap.xml"), List.of(this.root.list()));
+    }
+
+    @Test
+    public void testFailedStreamKeepsFile() throws IOException {
+        this.sink.write("sitemap.xml", bytes("<urlset/>"));
+        try {
+            this.sink.stream("sitemap.xml", out -> {
+                out.write("<url".getBytes(StandardCharsets.UTF_8));
+                throw new IOException("failed");
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals("<urlset/>", read(new File(this.root, "sitemap.xml")));
+        assertEquals(List.of("sitemap.xml"), List.of(this.root.list()));
+    }
+
+    @Test
+    public void testPublishKeepsExistingFile() throws IOException {
+        File source = this.folder.newFile("source.jpg");
+        Files.writeString(source.toPath(), "jpeg");
+        assertTrue(this.sink.publish("media/3f2a.jpg", source));
+        assertEquals("jpeg", read(new File(this.root, "media/3f2a.jpg")));
+        assertFalse(this.sink.publish("media/3f2a.jpg", source));
+    }
+
+    @Test
+    public void testDeleteRemovesCompressedFile() throws IOException {
+        this.sink.write("style.css", bytes("body{}"));
+        this.sink.write("style.css" + Precompressor.GZIP_SUFFIX, bytes("gzip"));
+        assertTrue(this.sink.delete("style.css"));
+        assertEquals(0, this.root.list().length);
+        assertFalse(this.sink.delete("style.css"));
+    }
+
+    @Test
+    public void testTemplateEngineCountsUnchangedPages() throws IOException {
+        TemplateEngine engine = new TemplateEngine();
+        Map<String, Object> page = Map.of("id", "abc");
+        engine.render("content-fragment-youtube", page, null, this.sink, "a.html");
+        engine.render("content-fragment-youtube", page, null, this.sink, "b.html");
+        engine.render("content-fragment-youtube", page, null, this.sink, "a.html");
+        engine.render("content-fragment-youtube", Map.of("id", "xyz"), null, this.sink, "b.html");
+        assertEquals(3, engine.getFilesWritten());
+        assertEquals(1, engine.getFilesUnchanged());
+    }
+
+    private static ByteBuffer bytes(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return Files.readString(file.toPath(), StandardCharsets.UTF_8);
+    }
+}
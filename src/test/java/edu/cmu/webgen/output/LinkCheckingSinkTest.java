@@ -0,0 +1,115 @@
+package edu.cmu.webgen.output;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LinkCheckingSinkTest {
+
+    @Test
+    public void testResolveRelative() {
+        assertEquals("p/a/img.png", LinkCheckingSink.resolve("p/a/", "img.png"));
+        assertEquals("p/a/img.png", LinkCheckingSink.resolve("p/a/", "./img.png"));
+        assertEquals("style.css", LinkCheckingSink.resolve("", "style.css"));
+    }
+
+    @Test
+    public void testResolveAbsolute() {
+        assertEquals("media/a.jpg", LinkCheckingSink.resolve("p/a/", "/media/a.jpg"));
+        assertEquals("p/b/index.html", LinkCheckingSink.resolve("topics/", "/p/b/"));
+    }
+
+    @Test
+    public void testResolveParent() {
+        assertEquals("style.css", LinkCheckingSink.resolve("p/a/", "../../style.css"));
+        assertEquals("p/b/index.html", LinkCheckingSink.resolve("p/a/", "../b/"));
+        // going above the root stays at the root, like browsers do
+        assertEquals("style.css", LinkCheckingSink.resolve("p/", "../../../style.css"));
+        assertEquals("p/c.html", LinkCheckingSink.resolve("p/a/", "../a/./../c.html"));
+    }
+
+    @Test
+    public void testResolveEscapes() {
+        assertEquals("media/my photo.jpg", LinkCheckingSink.resolve("", "media/my%20photo.jpg"));
+        assertEquals("media/caf\u00e9.jpg", LinkCheckingSink.resolve("", "media/caf%C3%A9.jpg"));
+        // a plus is not a space in a path
+        assertEquals("media/a+b.jpg", LinkCheckingSink.resolve("", "media/a+b.jpg"));
+        assertEquals("media/a+b.jpg", LinkCheckingSink.resolve("", "media/a%2Bb.jpg"));
+        // invalid escapes are checked as written
+        assertEquals("media/100%.jpg", LinkCheckingSink.resolve("", "media/100%.jpg"));
+    }
+
+    @Test
+    public void testResolveQueryAndFragment() {
+        assertEquals("topics/index.html", LinkCheckingSink.resolve("", "topics/?page=2"));
+        assertEquals("p/a/index.html", LinkCheckingSink.resolve("", "/p/a/#comments"));
+        assertEquals("search.html", LinkCheckingSink.resolve("", "search.html?q=a&amp;b=c#top"));
+        assertEquals("a.html", LinkCheckingSink.resolve("", "a.html#x?y"));
+    }
+
+    @Test
+    public void testResolveDirectory() {
+        assertEquals("index.html", LinkCheckingSink.resolve("p/a/", "/"));
+        assertEquals("index.html", LinkCheckingSink.resolve("p/", ".."));
+        assertEquals("index.html", LinkCheckingSink.resolve("", "."));
+        assertEquals("articles/index.html", LinkCheckingSink.resolve("", "/articles/"));
+        // without a trailing slash, the target may be a file or a directory, see check()
+        assertEquals("articles", LinkCheckingSink.resolve("", "/articles"));
+    }
+
+    @Test
+    public void testCheck() throws IOException {
+        try (LinkCheckingSink sink = new LinkCheckingSink(new InMemorySink())) {
+            write(sink, "articles/index.html", "");
+            write(sink, "index.html", """
+                    <a href="articles/">Articles</a> <a href='/articles'>All</a> <a href="#top">Top</a>
+                    <a href="https://example.org/missing">External</a> <a href="missing/">Missing</a>""");
+            List<LinkCheckingSink.BrokenLink> broken = sink.check();
+            assertEquals(List.of(new LinkCheckingSink.BrokenLink("index.html", "missing/", "missing/index.html")),
+                    broken);
+        }
+    }
+
+    @Test
+    public void testCheckSrcset() throws IOException {
+        try (LinkCheckingSink sink = new LinkCheckingSink(new InMemorySink())) {
+            write(sink, "media/a-480w.jpg", "");
+            write(sink, "media/a.jpg", "");
+            write(sink, "p/a/index.html", """
+                    <img src="/media/a.jpg" srcset="/media/a-480w.jpg 480w, /media/a-960w.jpg 960w,
+                      /media/a.jpg 1200w">""");
+            List<LinkCheckingSink.BrokenLink> broken = sink.check();
+            assertEquals(1, broken.size());
+            assertEquals("media/a-960w.jpg", broken.get(0).target());
+        }
+    }
+
+    @Test
+    public void testKeptFilesAreTargets() throws IOException {
+        try (LinkCheckingSink sink = new LinkCheckingSink(new InMemorySink())) {
+            // an unchanged feed of an earlier build, which is not written again
+            sink.keep("atom.xml");
+            write(sink, "index.html", "<link rel=\"alternate\" href=\"atom.xml\">");
+            assertTrue(sink.check().isEmpty());
+        }
+    }
+
+    @Test
+    public void testDeletedFilesAreNoTargets() throws IOException {
+        try (LinkCheckingSink sink = new LinkCheckingSink(new InMemorySink())) {
+            write(sink, "style.css", "");
+            sink.delete("style.css");
+            write(sink, "index.html", "<link rel=\"stylesheet\" href=\"style.css\">");
+            assertEquals(1, sink.check().size());
+        }
+    }
+
+    private static void write(OutputSink sink, String path, String content) throws IOException {
+        sink.write(path, ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,70 @@
+package edu.cmu.webgen.output;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MediaPublisherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPublishByContent() throws IOException {
+        File source = this.folder.newFolder("project");
+        File a = write(new File(source, "b/a.JPG"), "image");
+        File copy = write(new File(source, "a/copy.jpg"), "image");
+        File other = write(new File(source, "c.png"), "other");
+        InMemorySink sink = new InMemorySink();
+        MediaPublisher publisher = new MediaPublisher(sink, null, source, true);
+        Map<File, String> paths = publisher.publish(List.of(a, copy, other));
+
+        assertEquals(paths.get(a), paths.get(copy));
+        assertTrue(paths.get(a).matches("media/[0-9a-f]{16}\\.jpg"));
+        assertEquals(Set.of(paths.get(a), paths.get(other)), sink.getFiles().keySet());
+        assertEquals(2, publisher.getPublished());
+        assertEquals(1, publisher.getDuplicates());
+    }
+
+    @Test
+    public void testHashCacheOutsideOutput() throws IOException {
+        File source = this.folder.newFolder("project");
+        File b = write(new File(source, "b.jpg"), "b");
+        File a = write(new File(source, "a/a.jpg"), "a");
+        File cache = new File(this.folder.getRoot(), "cache/" + MediaPublisher.HASH_CACHE);
+        InMemorySink sink = new InMemorySink();
+        new MediaPublisher(sink, cache, source, true).publish(List.of(b, a));
+
+        // sorted, with paths relative to the source directory and nothing else
+        List<String> lines = Files.readAllLines(cache.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).startsWith("a/a.jpg\t"));
+        assertTrue(lines.get(1), lines.get(1).startsWith("b.jpg\t"));
+        assertFalse(lines.get(0).contains(source.getAbsolutePath()));
+        for (String path : sink.getFiles().keySet())
+            assertTrue(path, path.startsWith(MediaPublisher.MEDIA_DIRECTORY));
+
+        // a second build gives the same cache, without files that are gone
+        byte[] first = Files.readAllBytes(cache.toPath());
+        new MediaPublisher(new InMemorySink(), cache, source, true).publish(List.of(a, b));
+        assertArrayEquals(first, Files.readAllBytes(cache.toPath()));
+        new MediaPublisher(new InMemorySink(), cache, source, true).publish(List.of(b));
+        assertEquals(1, Files.readAllLines(cache.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    private static File write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+        return file;
+    }
+}
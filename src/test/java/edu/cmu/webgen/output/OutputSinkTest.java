@@ -0,0 +1,144 @@
+package edu.cmu.webgen.output;
+
+import edu.cmu.webgen.WebGen;
+import edu.cmu.webgen.WebGenArgs;
+import edu.cmu.webgen.parser.ProjectParser;
+import edu.cmu.webgen.project.Project;
+import edu.cmu.webgen.project.ProjectFormatException;
+import edu.cmu.webgen.rendering.Renderer;
+import edu.cmu.webgen.rendering.TemplateEngine;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+public class OutputSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testInMemorySink() throws IOException {
+        InMemorySink sink = new InMemorySink();
+        assertTrue(sink.write("index.html", bytes("<h1>"), bytes("Home</h1>")));
+        assertFalse(sink.write("index.html", bytes("<h1>Home</h1>")));
+        assertTrue(sink.write("index.html", bytes("<h1>Start</h1>")));
+        sink.stream("sitemap.xml", out -> out.write("<urlset/>".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("<h1>Start</h1>", new String(sink.get("index.html"), StandardCharsets.UTF_8));
+        assertEquals(List.of("index.html", "sitemap.xml"), List.copyOf(sink.getFiles().keySet()));
+        assertTrue(sink.delete("index.html"));
+        assertFalse(sink.delete("index.html"));
+        assertNull(sink.get("index.html"));
+        assertNull(sink.getRoot());
+    }
+
+    @Test
+    public void testWriteDoesNotModifyBuffers() throws IOException {
+        ByteBuffer chunk = bytes("content");
+        new InMemorySink().write("a.html", chunk);
+        new ZipSink(new ByteArrayOutputStream()).write("a.html", chunk);
+        assertEquals(0, chunk.position());
+        assertEquals(7, chunk.remaining());
+    }
+
+    @Test
+    public void testZipSink() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        File media = this.folder.newFile("photo.jpg");
+        Files.writeString(media.toPath(), "jpeg", StandardCharsets.UTF_8);
+        try (ZipSink sink = new ZipSink(archive)) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(40_000);
+            while (direct.hasRemaining())
+                direct.put((byte) ('a' + direct.position() % 26));
+            direct.flip();
+            sink.write("index.html", bytes("<h1>"), bytes("Home</h1>"));
+            sink.write("p/a/index.html", direct);
+            sink.stream("sitemap.xml", out -> {
+                out.write("<urlset/>".getBytes(StandardCharsets.UTF_8));
+                // closing the stream must not close the archive
+                out.close();
+            });
+            sink.publish("media/photo.jpg", media);
+        }
+        Map<String, byte[]> entries = readZip(archive.toByteArray());
+        assertEquals(List.of("index.html", "p/a/index.html", "sitemap.xml", "media/photo.jpg"),
+                List.copyOf(entries.keySet()));
+        assertEquals("<h1>Home</h1>", new String(entries.get("index.html"), StandardCharsets.UTF_8));
+        assertEquals(40_000, entries.get("p/a/index.html").length);
+        assertEquals('z', entries.get("p/a/index.html")[25]);
+        assertEquals("<urlset/>", new String(entries.get("sitemap.xml"), StandardCharsets.UTF_8));
+        assertEquals("jpeg", new String(entries.get("media/photo.jpg"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testHashingSink() throws IOException {
+        InMemorySink files = new InMemorySink();
+        HashingSink sink = new HashingSink(files);
+        sink.write("index.html", bytes("<h1>"), bytes("Home</h1>"));
+        sink.stream("sitemap.xml", out -> out.write("<urlset/>".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(ContentHash.of("<h1>Home</h1>".getBytes(StandardCharsets.UTF_8)).substring(0, 16),
+                sink.getHash("index.html"));
+        assertEquals(ContentHash.of("<urlset/>".getBytes(StandardCharsets.UTF_8)).substring(0, 16),
+                sink.getHash("sitemap.xml"));
+        assertNotNull(files.get("sitemap.xml"));
+        sink.delete("index.html");
+        assertNull(sink.getHash("index.html"));
+        assertNull(files.get("index.html"));
+    }
+
+    @Test
+    public void testSameSiteInEverySink() throws IOException, ProjectFormatException {
+        InMemorySink memory = new InMemorySink();
+        render(memory);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipSink zip = new ZipSink(archive)) {
+            render(zip);
+        }
+        File directory = this.folder.newFolder("site");
+        render(new FileSystemSink(directory));
+
+        Map<String, byte[]> entries = readZip(archive.toByteArray());
+        assertEquals(memory.getFiles().keySet(), entries.keySet());
+        for (Map.Entry<String, byte[]> file : memory.getFiles().entrySet()) {
+            assertArrayEquals(file.getKey(), file.getValue(), entries.get(file.getKey()));
+            assertArrayEquals(file.getKey(), file.getValue(),
+                    Files.readAllBytes(new File(directory, file.getKey()).toPath()));
+        }
+        assertTrue(memory.getFiles().containsKey("index.html"));
+        assertTrue(memory.getFiles().containsKey("css/main.css"));
+    }
+
+    private static void render(OutputSink sink) throws IOException, ProjectFormatException {
+        WebGen.resetIds();
+        Project project = new ProjectParser(false, true).loadProject(new File("testProject"));
+        new Renderer(sink, WebGenArgs.ArticleSorting.PUBLISHED_LAST, true, false, null, false, null, false, false,
+                null, 0, false, new TemplateEngine()).renderProject(project);
+    }
+
+    private static ByteBuffer bytes(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, byte[]> readZip(byte[] archive) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry())
+                entries.put(entry.getName(), zip.readAllBytes());
+        }
+        return entries;
+    }
+}
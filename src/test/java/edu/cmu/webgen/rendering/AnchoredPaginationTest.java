@@ -0,0 +1,87 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.WebGen;
+import edu.cmu.webgen.WebGenArgs;
+import edu.cmu.webgen.output.InMemorySink;
+import edu.cmu.webgen.parser.ProjectParser;
+import edu.cmu.webgen.project.ProjectFormatException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnchoredPaginationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOlderPagesKeepTheirEntries() {
+        List<List<Integer>> before = WebGen.paginateContentAnchored(List.of(1, 2, 3, 4, 5, 6, 7), 3);
+        assertEquals(List.of(List.of(7), List.of(6, 5, 4), List.of(3, 2, 1)), before);
+        List<List<Integer>> after = WebGen.paginateContentAnchored(List.of(1, 2, 3, 4, 5, 6, 7, 8), 3);
+        assertEquals(List.of(List.of(8, 7), List.of(6, 5, 4), List.of(3, 2, 1)), after);
+        // a new page is added in front, the others keep their entries
+        List<List<Integer>> grown = WebGen.paginateContentAnchored(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), 3);
+        assertEquals(before.subList(1, 3), grown.subList(2, 4));
+    }
+
+    @Test
+    public void testPathsAndLabelsUseTheSameNumber() {
+        Renderer renderer = createRenderer(new InMemorySink());
+        // the page shown last holds the oldest entries and is page 1, in paths and labels
+        assertEquals("/articles/", renderer.createArticleListPath("/articles/", 0, 3));
+        assertEquals("/articles/2/", renderer.createArticleListPath("/articles/", 1, 3));
+        assertEquals("/articles/1/", renderer.createArticleListPath("/articles/", 2, 3));
+        assertEquals(1, renderer.getArticleListPageNumber(2, 3));
+        // with another page, the older pages keep their numbers
+        assertEquals("/articles/2/", renderer.createArticleListPath("/articles/", 2, 4));
+        assertEquals("/articles/1/", renderer.createArticleListPath("/articles/", 3, 4));
+    }
+
+    @Test
+    public void testNewEntryOnlyChangesNewestPage() throws IOException, ProjectFormatException {
+        File project = this.folder.newFolder("project");
+        Files.writeString(new File(project, "main.yml").toPath(), "title: Test\norganization: Test\n");
+        for (int i = 1; i <= 12; i++)
+            writeArticle(project, i);
+        InMemorySink before = render(project);
+        writeArticle(project, 13);
+        InMemorySink after = render(project);
+
+        assertNotEquals(new String(before.get("articles/index.html"), StandardCharsets.UTF_8),
+                new String(after.get("articles/index.html"), StandardCharsets.UTF_8));
+        for (String olderPage : List.of("articles/1/index.html", "articles/2/index.html"))
+            assertArrayEquals(olderPage, before.get(olderPage), after.get(olderPage));
+        String oldest = new String(after.get("articles/1/index.html"), StandardCharsets.UTF_8);
+        assertTrue(oldest, oldest.contains("Article 01"));
+        assertTrue(oldest, oldest.matches("(?s).*<span class=\"pag-link pag-active\">1</span>.*"));
+    }
+
+    private static void writeArticle(File project, int i) throws IOException {
+        File article = new File(project, "a%02d/index.md".formatted(i));
+        article.getParentFile().mkdirs();
+        Files.writeString(article.toPath(), "---\ndate: Jan %d, 2020\n---\n\n# Article %02d\n\nText.\n".formatted(i, i));
+        // same modification time in both builds, so that reproducible pages only change with their entries
+        article.setLastModified(1_577_836_800_000L + i * 1000L);
+    }
+
+    private static InMemorySink render(File projectDirectory) throws IOException, ProjectFormatException {
+        WebGen.resetIds();
+        InMemorySink sink = new InMemorySink();
+        createRenderer(sink).renderProject(new ProjectParser(false, true).loadProject(projectDirectory));
+        return sink;
+    }
+
+    private static Renderer createRenderer(InMemorySink sink) {
+        return new Renderer(sink, WebGenArgs.ArticleSorting.PUBLISHED_LAST, true, true, null, false, null, false,
+                false, null, 0, false, new TemplateEngine());
+    }
+}
@@ -0,0 +1,138 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.WebGen;
+import edu.cmu.webgen.WebGenArgs;
+import edu.cmu.webgen.output.ContentHash;
+import edu.cmu.webgen.output.FileSystemSink;
+import edu.cmu.webgen.parser.ProjectParser;
+import edu.cmu.webgen.project.Project;
+import edu.cmu.webgen.project.ProjectFormatException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class AssetManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFingerprintedPath() {
+        assertEquals("css/main.0123456789.css", AssetManifest.fingerprintedPath("css/main.css", "0123456789"));
+        assertEquals("js/app.min.0123456789.js", AssetManifest.fingerprintedPath("js/app.min.js", "0123456789"));
+        // the hash is appended to names without extension, including dot files
+        assertEquals("LICENSE.0123456789", AssetManifest.fingerprintedPath("LICENSE", "0123456789"));
+        assertEquals("a.b/c.0123456789", AssetManifest.fingerprintedPath("a.b/c", "0123456789"));
+        assertEquals("a/.htaccess.0123456789", AssetManifest.fingerprintedPath("a/.htaccess", "0123456789"));
+    }
+
+    @Test
+    public void testRegister() {
+        AssetManifest assets = new AssetManifest(true);
+        byte[] content = bytes("body { color: black }");
+        String hash = ContentHash.of(content).substring(0, 10);
+        assertEquals("css/main." + hash + ".css", assets.register("css/main.css", content));
+        // the same content is always published under the same name
+        assertEquals("css/main." + hash + ".css", new AssetManifest(true).register("css/main.css", content));
+        assertNotEquals("css/main." + hash + ".css",
+                new AssetManifest(true).register("css/main.css", bytes("body { color: white }")));
+        assertEquals("css/main." + hash + ".css", assets.resolve("css/main.css"));
+        assertEquals("css/print.css", assets.resolve("css/print.css"));
+        assertEquals(Set.of("css/main." + hash + ".css"), assets.getPublishedPaths());
+    }
+
+    @Test
+    public void testRegisterWithoutFingerprint() {
+        AssetManifest assets = new AssetManifest(false);
+        assertFalse(assets.isFingerprint());
+        assertEquals("css/main.css", assets.register("css/main.css", bytes("body { color: black }")));
+        assertEquals("css/main.css", assets.resolve("css/main.css"));
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        AssetManifest assets = new AssetManifest(true);
+        assets.registerPublished("css/main.css", "css/main.0123456789.css");
+        assets.registerPublished("a \"quoted\" \\ name\t\u00e9.css", "x.css");
+        assets.registerPublished("b.js", "b.0123456789.js");
+        String json = new String(assets.toJson(), StandardCharsets.UTF_8);
+        assertEquals("""
+                {
+                  "a \\"quoted\\" \\\\ name\\u0009\u00e9.css": "x.css",
+                  "b.js": "b.0123456789.js",
+                  "css/main.css": "css/main.0123456789.css"
+                }
+                """, json);
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("a \"quoted\" \\ name\t\u00e9.css", "x.css");
+        expected.put("b.js", "b.0123456789.js");
+        expected.put("css/main.css", "css/main.0123456789.css");
+        assertEquals(expected, AssetManifest.parseJson(json));
+        assertEquals(Map.of(), AssetManifest.parseJson(new String(new AssetManifest(true).toJson(),
+                StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testMalformedJson() {
+        for (String json : List.of("", "[]", "{\"a\": \"b\"", "{\"a\" \"b\"}", "{\"a\": 1}", "{\"a\": \"b\",}"))
+            assertThrows(json, IOException.class, () -> AssetManifest.parseJson(json));
+    }
+
+    @Test
+    public void testRenderFingerprintedStylesheet() throws IOException, ProjectFormatException {
+        File site = this.folder.newFolder("site");
+        // assets of an earlier build, listed in its manifest, and a file that is not an asset
+        write(new File(site, "css/main.0000000000.css"), "old");
+        write(new File(site, "notes.txt"), "keep");
+        write(new File(site, AssetManifest.MANIFEST_PATH),
+                "{\"css/main.css\": \"css/main.0000000000.css\", \"notes\": \"../notes.txt\"}");
+
+        TemplateEngine templateEngine = render(site, true);
+        String stylesheet = templateEngine.getAssets().resolve("css/main.css");
+        assertTrue(stylesheet.matches("css/main\\.[0-9a-f]{10}\\.css"));
+        assertTrue(new File(site, stylesheet).isFile());
+        assertFalse(new File(site, "css/main.css").exists());
+        assertFalse(new File(site, "css/main.0000000000.css").exists());
+        assertTrue(new File(site, "notes.txt").exists());
+        assertTrue(Files.readString(new File(site, "index.html").toPath()).contains("/" + stylesheet + "\""));
+        Map<String, String> manifest = AssetManifest.parseJson(
+                Files.readString(new File(site, AssetManifest.MANIFEST_PATH).toPath()));
+        assertEquals(stylesheet, manifest.get("css/main.css"));
+        assertFalse(manifest.containsValue("css/main.0000000000.css"));
+
+        // turning fingerprinting off removes the fingerprinted stylesheet and the manifest
+        render(site, false);
+        assertTrue(new File(site, "css/main.css").isFile());
+        assertFalse(new File(site, stylesheet).exists());
+        assertFalse(new File(site, AssetManifest.MANIFEST_PATH).exists());
+    }
+
+    private static TemplateEngine render(File site, boolean fingerprint) throws IOException, ProjectFormatException {
+        WebGen.resetIds();
+        Project project = new ProjectParser(false, true).loadProject(new File("testProject"));
+        TemplateEngine templateEngine = new TemplateEngine(false, fingerprint);
+        new Renderer(new FileSystemSink(site), WebGenArgs.ArticleSorting.PUBLISHED_LAST, true, false, null, false,
+                null, false, false, null, 0, false, templateEngine).renderProject(project);
+        return templateEngine;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.writeString(file.toPath(), content);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
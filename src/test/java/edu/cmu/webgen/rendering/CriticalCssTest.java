@@ -0,0 +1,60 @@
+package edu.cmu.webgen.rendering;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CriticalCssTest {
+
+    private static final String STYLESHEET = """
+            body { margin: 0 }
+            h1 { font-size: 2em }
+            pre { overflow: auto }
+            .breadcrumb:after { content: " > " }
+            .pag-group:after { content: " | " }
+            .youtube-facade img { width: 100% }
+            .previewh2 { font-weight: bold }
+            @media print { .header { display: none } }
+            """;
+
+    @Test
+    public void testFamiliesGetTheirRules() {
+        CriticalCss css = new CriticalCss(STYLESHEET);
+        String homepage = css.forTemplate("homepage.html");
+        String article = css.forTemplate("article.html");
+        String articleList = css.forTemplate("article-list.html");
+        String topicList = css.forTemplate("topic-list.html");
+
+        // entry pages show documents with their fragments and breadcrumbs
+        assertTrue(article, article.contains(".breadcrumb:after"));
+        assertTrue(article, article.contains(".youtube-facade img"));
+        assertTrue(article, article.contains("pre{"));
+        assertFalse(article, article.contains(".pag-group"));
+
+        // the homepage shows previews, without breadcrumbs, fragments or pagination
+        assertTrue(homepage, homepage.contains(".previewh2"));
+        assertFalse(homepage, homepage.contains(".breadcrumb"));
+        assertFalse(homepage, homepage.contains(".youtube-facade"));
+        assertFalse(homepage, homepage.contains("pre{"));
+        assertFalse(homepage, homepage.contains(".pag-group"));
+
+        assertTrue(articleList, articleList.contains(".pag-group:after"));
+        assertTrue(articleList, articleList.contains(".previewh2"));
+        assertFalse(topicList, topicList.contains(".previewh2"));
+
+        // rules of the frame and at-rules are shared by all families
+        for (String family : new String[]{homepage, article, articleList, topicList}) {
+            assertTrue(family, family.contains("body{margin: 0}"));
+            assertTrue(family, family.contains("h1{"));
+            assertTrue(family, family.contains("@media print"));
+        }
+        assertNotEquals(homepage, article);
+        assertNotEquals(homepage, articleList);
+    }
+
+    @Test
+    public void testExtractedOncePerTemplate() {
+        CriticalCss css = new CriticalCss(STYLESHEET);
+        assertSame(css.forTemplate("article.html"), css.forTemplate("article.html"));
+    }
+}
@@ -0,0 +1,219 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.WebGen;
+import edu.cmu.webgen.WebGenArgs;
+import edu.cmu.webgen.output.FileSystemSink;
+import edu.cmu.webgen.output.InMemorySink;
+import edu.cmu.webgen.parser.ProjectParser;
+import edu.cmu.webgen.project.Project;
+import edu.cmu.webgen.project.ProjectFormatException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FeedWriterTest {
+
+    private static final String ATOM = "http://www.w3.org/2005/Atom";
+    private static final LocalDateTime DATE = LocalDateTime.of(2021, 3, 4, 5, 6, 7);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWellFormedAtom() throws Exception {
+        InMemorySink sink = new InMemorySink();
+        FeedWriter feeds = new FeedWriter(sink, "https://example.org/", "Tom & Jerry", null);
+        assertTrue(feeds.write("atom.xml", "News <all>", "/articles/", List.of(
+                entry("/p/b/", "Cats & \"Dogs\"", DATE.plusDays(1), "<p>Some <b>bold</b> text</p>"),
+                entry("/p/a/", "First", DATE, "<p>First</p>"))));
+        feeds.finish();
+
+        Element feed = parse(sink.get("atom.xml"));
+        assertEquals(ATOM, feed.getNamespaceURI());
+        assertEquals("feed", feed.getLocalName());
+        assertEquals("https://example.org/articles/", text(feed, "id"));
+        assertEquals("News <all>", text(feed, "title"));
+        assertEquals("Tom & Jerry", text((Element) feed.getElementsByTagNameNS(ATOM, "author").item(0), "name"));
+        // the feed was updated with its newest entry
+        assertEquals(DATE.plusDays(1), OffsetDateTime.parse(text(feed, "updated")).toLocalDateTime());
+        assertEquals("https://example.org/atom.xml", link(feed, "self"));
+
+        NodeList entries = feed.getElementsByTagNameNS(ATOM, "entry");
+        assertEquals(2, entries.getLength());
+        Element first = (Element) entries.item(0);
+        assertEquals("https://example.org/p/b/", text(first, "id"));
+        assertEquals("Cats & \"Dogs\"", text(first, "title"));
+        assertEquals("https://example.org/p/b/", link(first, "alternate"));
+        assertEquals(DATE.plusDays(1), OffsetDateTime.parse(text(first, "published")).toLocalDateTime());
+        // the summary is html, escaped as text
+        Element summary = (Element) first.getElementsByTagNameNS(ATOM, "summary").item(0);
+        assertEquals("html", summary.getAttribute("type"));
+        assertEquals("<p>Some <b>bold</b> text</p>", summary.getTextContent());
+        assertEquals(0, summary.getElementsByTagName("*").getLength());
+
+        assertEquals(1, feeds.getFeedsWritten());
+        assertEquals(0, feeds.getFeedsUnchanged());
+    }
+
+    @Test
+    public void testEmptyFeed() throws Exception {
+        InMemorySink sink = new InMemorySink();
+        FeedWriter feeds = new FeedWriter(sink, "https://example.org", "Author", null);
+        feeds.write("topics/a/atom.xml", "Articles for: a", "/topics/a/", List.of());
+        Element feed = parse(sink.get("topics/a/atom.xml"));
+        assertEquals(0, feed.getElementsByTagNameNS(ATOM, "entry").getLength());
+        assertNotNull(text(feed, "updated"));
+    }
+
+    @Test
+    public void testUnchangedFeedIsNotWritten() throws IOException {
+        File site = this.folder.newFolder("site");
+        List<FeedWriter.Entry> entries = List.of(entry("/p/a/", "First", DATE, "<p>First</p>"));
+        FeedWriter first = new FeedWriter(new FileSystemSink(site), "https://example.org", "Author", site);
+        assertTrue(first.write("atom.xml", "News", "/articles/", entries));
+        assertTrue(first.write("topics/a/atom.xml", "Articles for: a", "/topics/a/", entries));
+        first.finish();
+        assertTrue(new File(site, FeedWriter.MANIFEST).isFile());
+
+        // summaries are not created for feeds that are kept
+        AtomicInteger summaries = new AtomicInteger();
+        List<FeedWriter.Entry> unchanged = List.of(new FeedWriter.Entry("/p/a/", "First", DATE, DATE, () -> {
+            summaries.incrementAndGet();
+            return "<p>First</p>";
+        }));
+        RecordingSink sink = new RecordingSink(site);
+        FeedWriter second = new FeedWriter(sink, "https://example.org", "Author", site);
+        assertFalse(second.write("atom.xml", "News", "/articles/", unchanged));
+        assertTrue(second.write("topics/a/atom.xml", "Articles for: a", "/topics/a/",
+                List.of(entry("/p/a/", "First, updated", DATE, "<p>First</p>"))));
+        second.finish();
+        assertEquals(0, summaries.get());
+        assertEquals(List.of("atom.xml"), sink.kept);
+        assertEquals(List.of("topics/a/atom.xml", FeedWriter.MANIFEST), sink.written);
+        assertEquals(1, second.getFeedsWritten());
+        assertEquals(1, second.getFeedsUnchanged());
+
+        // a feed missing from the output is written again, even if the manifest lists it
+        assertTrue(new File(site, "atom.xml").delete());
+        assertTrue(new FeedWriter(new FileSystemSink(site), "https://example.org", "Author", site)
+                .write("atom.xml", "News", "/articles/", unchanged));
+        assertEquals(1, summaries.get());
+    }
+
+    @Test
+    public void testRenderFeeds() throws Exception {
+        WebGen.resetIds();
+        Project project = new ProjectParser(false, true).loadProject(new File("testProject"));
+        InMemorySink sink = new InMemorySink();
+        new Renderer(sink, WebGenArgs.ArticleSorting.PUBLISHED_LAST, true, false, null, false, null, false, false,
+                "https://example.org", 2, false, new TemplateEngine()).renderProject(project);
+
+        // only the newest entries, newest first
+        Element feed = parse(sink.get(Renderer.SITE_FEED));
+        NodeList entries = feed.getElementsByTagNameNS(ATOM, "entry");
+        assertEquals(2, entries.getLength());
+        OffsetDateTime newest = OffsetDateTime.parse(text((Element) entries.item(0), "published"));
+        OffsetDateTime next = OffsetDateTime.parse(text((Element) entries.item(1), "published"));
+        assertFalse(newest.isBefore(next));
+        for (int idx = 0; idx < entries.getLength(); idx++) {
+            String page = text((Element) entries.item(idx), "id").substring("https://example.org/".length());
+            assertNotNull(page, sink.get(page + "index.html"));
+        }
+        // every topic has a feed, which its page links
+        List<String> topicFeeds = new ArrayList<>();
+        for (String path : sink.getFiles().keySet())
+            if (path.startsWith("topics/") && path.endsWith("/atom.xml"))
+                topicFeeds.add(path);
+        assertFalse(topicFeeds.isEmpty());
+        for (String topicFeed : topicFeeds) {
+            parse(sink.get(topicFeed));
+            String topicPage = new String(sink.get(topicFeed.replace("atom.xml", "index.html")));
+            assertTrue(topicPage.contains("application/atom+xml"));
+        }
+    }
+
+    @Test
+    public void testNoFeedsWithoutSiteUrl() throws Exception {
+        WebGen.resetIds();
+        Project project = new ProjectParser(false, true).loadProject(new File("testProject"));
+        InMemorySink sink = new InMemorySink();
+        new Renderer(sink, WebGenArgs.ArticleSorting.PUBLISHED_LAST, true, false, null, false, null, false, false,
+                null, 2, false, new TemplateEngine()).renderProject(project);
+        for (String path : sink.getFiles().keySet())
+            assertFalse(path, path.endsWith("atom.xml"));
+        assertFalse(new String(sink.get("index.html")).contains("application/atom+xml"));
+    }
+
+    /**
+     * records the files written and kept
+     */
+    private static class RecordingSink extends FileSystemSink {
+        final List<String> written = new ArrayList<>();
+        final List<String> kept = new ArrayList<>();
+
+        RecordingSink(File root) {
+            super(root);
+        }
+
+        @Override
+        public boolean write(String path, ByteBuffer... chunks) throws IOException {
+            this.written.add(path);
+            return super.write(path, chunks);
+        }
+
+        @Override
+        public void keep(String path) {
+            this.kept.add(path);
+            super.keep(path);
+        }
+    }
+
+    private static FeedWriter.Entry entry(String pagePath, String title, LocalDateTime published, String summary) {
+        return new FeedWriter.Entry(pagePath, title, published, published, () -> summary);
+    }
+
+    private static Element parse(byte[] xml) throws ParserConfigurationException, IOException, SAXException {
+        assertNotNull(xml);
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        return document.getDocumentElement();
+    }
+
+    /**
+     * text of the first child element with the given name
+     */
+    private static String text(Element parent, String name) {
+        for (var node = parent.getFirstChild(); node != null; node = node.getNextSibling())
+            if (node instanceof Element e && ATOM.equals(e.getNamespaceURI()) && e.getLocalName().equals(name))
+                return e.getTextContent();
+        fail("No element " + name);
+        return null;
+    }
+
+    private static String link(Element parent, String rel) {
+        for (var node = parent.getFirstChild(); node != null; node = node.getNextSibling())
+            if (node instanceof Element e && e.getLocalName().equals("link") && e.getAttribute("rel").equals(rel))
+                return e.getAttribute("href");
+        fail("No link " + rel);
+        return null;
+    }
+}
@@ -0,0 +1,125 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.parser.ProjectParser;
+import edu.cmu.webgen.project.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares rendering the documents of a project into a pooled {@link HtmlBuffer} with rendering them
+ * into a {@link StringWriter} and copying out the String, the path used before HtmlBuffer existed.
+ * Both copy the result into the same writer.
+ * <p>
+ * Not a test, run it directly with the directory of a project as argument (default
+ * {@code testProject}). It reports time and allocated bytes per rendering of all documents, after
+ * warming up both paths.
+ */
+public class HtmlBufferBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int ITERATIONS = 2_000;
+
+    public static void main(String[] args) throws IOException, ProjectFormatException {
+        Project project = new ProjectParser(false).loadProject(new File(args.length > 0 ? args[0] : "testProject"));
+        List<FormattedTextDocument> documents = new ArrayList<>();
+        for (Article article : project.getArticles()) {
+            collect(article.getContent(), documents);
+            for (SubArticle subArticle : article.getInnerArticles()) {
+                collect(subArticle.getContent(), documents);
+                for (SubSubArticle subSubArticle : subArticle.getInnerArticles())
+                    collect(subSubArticle.getContent(), documents);
+            }
+        }
+        System.out.println("Documents: %d".formatted(documents.size()));
+
+        Writer out = Writer.nullWriter();
+        Runnable stringWriter = () -> {
+            try {
+                for (FormattedTextDocument document : documents) {
+                    StringWriter w = new StringWriter();
+                    document.toHtml(new WriterSink(w));
+                    out.write(w.toString());
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        };
+        Runnable htmlBuffer = () -> {
+            try {
+                for (FormattedTextDocument document : documents)
+                    try (HtmlBuffer w = HtmlBuffer.acquire()) {
+                        document.toHtml(w);
+                        w.writeTo(out);
+                    }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        };
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            measure(stringWriter);
+            measure(htmlBuffer);
+        }
+        long[] before = new long[2], after = new long[2];
+        for (int round = 0; round < ROUNDS; round++) {
+            add(before, measure(stringWriter));
+            add(after, measure(htmlBuffer));
+        }
+        report("StringWriter", before);
+        report("HtmlBuffer", after);
+    }
+
+    private static void collect(List<AbstractContent> content, List<FormattedTextDocument> documents) {
+        for (AbstractContent c : content)
+            if (c instanceof FormattedTextDocument document)
+                documents.add(document);
+    }
+
+    /**
+     * @return nanoseconds and bytes allocated by the current thread
+     */
+    private static long[] measure(Runnable path) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long bytes = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            path.run();
+        return new long[]{System.nanoTime() - start, threads.getCurrentThreadAllocatedBytes() - bytes};
+    }
+
+    private static void add(long[] total, long[] measured) {
+        total[0] += measured[0];
+        total[1] += measured[1];
+    }
+
+    private static void report(String name, long[] total) {
+        long ops = (long) ROUNDS * ITERATIONS;
+        System.out.println("%-12s %8.1f us/op %10d B/op".formatted(name, total[0] / 1000.0 / ops, total[1] / ops));
+    }
+
+    /**
+     * the sink the document tree rendered into before, a StringWriter
+     */
+    private record WriterSink(StringWriter w) implements HtmlSink {
+        @Override
+        public void write(int c) {
+            this.w.write(c);
+        }
+
+        @Override
+        public void write(String s) {
+            this.w.write(s);
+        }
+
+        @Override
+        public void write(String s, int off, int len) {
+            this.w.write(s, off, len);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package edu.cmu.webgen.rendering;
+
+import com.github.jknack.handlebars.internal.text.StringEscapeUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares {@link HtmlEscaper} on random text with {@code StringEscapeUtils.escapeHtml4} of handlebars,
+ * the escaper it replaced.
+ */
+public class HtmlEscaperTest {
+
+    private static final int RUNS = 20_000;
+    private static final String SPECIAL = "<>&\"'";
+
+    private final Random random = new Random(42);
+
+    private char[] randomChars(int length) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            switch (this.random.nextInt(8)) {
+                case 0 -> text.append(SPECIAL.charAt(this.random.nextInt(SPECIAL.length())));
+                case 1 -> text.append((char) (0x20 + this.random.nextInt(0x5f)));
+                // control characters, including DEL and C1 controls
+                case 2 -> text.append((char) (this.random.nextBoolean() ? this.random.nextInt(0x20) : 0x7f + this.random.nextInt(0x21)));
+                // Latin-1, all of which is escaped from 0xa0
+                case 3 -> text.append((char) (0xa0 + this.random.nextInt(0x60)));
+                // Greek, punctuation, arrows, mathematical operators and symbols, partly escaped
+                case 4 -> text.append((char) (this.random.nextBoolean() ? 0x0370 + this.random.nextInt(0x70) :
+                        0x2000 + this.random.nextInt(0x670)));
+                case 5 -> text.appendCodePoint(0x10000 + this.random.nextInt(0x100000 - 0x10000));
+                // unpaired surrogates
+                case 6 -> text.append((char) (0xd800 + this.random.nextInt(0x800)));
+                default -> text.append((char) this.random.nextInt(0x10000));
+            }
+        }
+        return text.toString().toCharArray();
+    }
+
+    private String randomText() {
+        return new String(randomChars(this.random.nextInt(40)));
+    }
+
+    @Test
+    public void testEscapeString() {
+        for (int i = 0; i < RUNS; i++) {
+            String text = randomText();
+            assertEquals(StringEscapeUtils.escapeHtml4(text), HtmlEscaper.escape(text));
+        }
+    }
+
+    @Test
+    public void testEscapeIntoSink() {
+        for (int i = 0; i < RUNS; i++) {
+            String text = randomText();
+            try (HtmlBuffer out = HtmlBuffer.acquire()) {
+                HtmlEscaper.escape(text, out);
+                assertEquals(StringEscapeUtils.escapeHtml4(text), out.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testEscapePartIntoSink() {
+        for (int i = 0; i < RUNS; i++) {
+            String prefix = randomText();
+            String text = randomText();
+            String suffix = randomText();
+            try (HtmlBuffer out = HtmlBuffer.acquire()) {
+                HtmlEscaper.escape(prefix + text + suffix, prefix.length(), text.length(), out);
+                assertEquals(StringEscapeUtils.escapeHtml4(text), out.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testUnchangedTextIsReturned() {
+        for (int i = 0; i < RUNS; i++) {
+            // random text without the characters escapeHtml4 escapes
+            StringBuilder text = new StringBuilder();
+            for (char c : randomChars(1 + this.random.nextInt(40)))
+                if (StringEscapeUtils.escapeHtml4(String.valueOf(c)).length() == 1)
+                    text.append(c);
+            String unchanged = text.toString();
+            assertEquals(unchanged, StringEscapeUtils.escapeHtml4(unchanged));
+            assertSame(unchanged, HtmlEscaper.escape(unchanged));
+        }
+    }
+
+    @Test
+    public void testSurrogatePairs() {
+        String text = "\ud83d\ude00 <\ud835\udc9c> \udc00\ud800";
+        assertEquals(StringEscapeUtils.escapeHtml4(text), HtmlEscaper.escape(text));
+    }
+
+    @Test
+    public void testNull() {
+        assertNull(HtmlEscaper.escape(null));
+    }
+}
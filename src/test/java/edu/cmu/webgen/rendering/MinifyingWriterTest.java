@@ -0,0 +1,74 @@
+package edu.cmu.webgen.rendering;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class MinifyingWriterTest {
+
+    @Test
+    public void testCollapseWhitespace() throws IOException {
+        assertMinified("<p> a\nb </p>", "<p>  a \n  b  </p>");
+        assertMinified("<ul>\n<li>a</li>\n</ul>", "<ul>\n    <li>a</li>\n\n</ul>");
+        assertMinified("a b", "a\t \tb");
+    }
+
+    @Test
+    public void testWhitespaceInTags() throws IOException {
+        assertMinified("<a href=\"x  y\" class='a  b'>", "<a   href=\"x  y\"\n  class='a  b'  >");
+        assertMinified("<br />", "<br   />");
+    }
+
+    @Test
+    public void testComments() throws IOException {
+        assertMinified("ab", "a<!-- comment <p> -- -->b");
+        assertMinified("a b", "a <!-- comment --> b");
+        assertMinified("<!--[if IE]> <p>x</p> <![endif]-->", "<!--[if IE]> <p>x</p> <![endif]-->");
+    }
+
+    @Test
+    public void testRawElements() throws IOException {
+        assertMinified("<pre>  a\n\n  b</pre> c", "<pre>  a\n\n  b</pre>   c");
+        assertMinified("<PRE class=\"x\">  a  </PRE>", "<PRE  class=\"x\">  a  </PRE >");
+        assertMinified("<script>if (a <b)  x(\"<!-- \");</script>", "<script>if (a <b)  x(\"<!-- \");</script>");
+        assertMinified("<style> p  { } </style>", "<style> p  { } </style>");
+        // a tag that only starts like a raw element
+        assertMinified("<prefix> a", "<prefix>   a");
+    }
+
+    @Test
+    public void testIncompleteInput() throws IOException {
+        assertMinified("a <", "a <");
+        assertMinified("a<!--", "a<!--");
+    }
+
+    @Test
+    public void testNonAscii() throws IOException {
+        assertMinified("<p>caf\u00e9 \ud83d\ude00</p>", "<p>caf\u00e9   \ud83d\ude00<!-- \u00e9 --></p>");
+    }
+
+    /**
+     * minify the input written at once and character by character, which must give the same
+     * result, and check the number of bytes saved
+     */
+    private static void assertMinified(String expected, String input) throws IOException {
+        StringWriter whole = new StringWriter();
+        MinifyingWriter minifier = new MinifyingWriter(whole);
+        minifier.write(input);
+        minifier.finish();
+        assertEquals(expected, whole.toString());
+        assertEquals(input.getBytes(StandardCharsets.UTF_8).length - expected.getBytes(StandardCharsets.UTF_8).length,
+                minifier.getBytesSaved());
+
+        StringWriter pieces = new StringWriter();
+        MinifyingWriter streaming = new MinifyingWriter(pieces);
+        for (int i = 0; i < input.length(); i++)
+            streaming.write(input.charAt(i));
+        streaming.finish();
+        assertEquals(expected, pieces.toString());
+    }
+}
@@ -0,0 +1,110 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.WebGen;
+import edu.cmu.webgen.WebGenArgs;
+import edu.cmu.webgen.output.FileSystemSink;
+import edu.cmu.webgen.parser.ProjectParser;
+import edu.cmu.webgen.project.Project;
+import edu.cmu.webgen.project.ProjectFormatException;
+import org.apache.commons.cli.ParseException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ShardManifestTest {
+
+    private static final int SHARDS = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File target;
+    private Set<String> allPages;
+
+    @Before
+    public void renderShards() throws IOException, ProjectFormatException {
+        this.target = this.folder.getRoot();
+        this.allPages = createRenderer(null).planPages(loadProject());
+        for (int idx = 0; idx < SHARDS; idx++)
+            createRenderer(new WebGenArgs.Shard(idx, SHARDS)).renderProject(loadProject());
+    }
+
+    @Test
+    public void testShardsSplitPages() throws IOException {
+        Set<String> rendered = new HashSet<>();
+        for (int idx = 0; idx < SHARDS; idx++) {
+            WebGenArgs.Shard shard = new WebGenArgs.Shard(idx, SHARDS);
+            List<String> pages = Files.readAllLines(ShardManifest.getManifestFile(this.target, shard).toPath(),
+                    StandardCharsets.UTF_8);
+            for (String page : pages) {
+                assertTrue(page, shard.contains(page));
+                assertTrue(page, rendered.add(page));
+            }
+        }
+        assertEquals(this.allPages, rendered);
+        assertTrue(new File(this.target, "index.html").isFile());
+    }
+
+    @Test
+    public void testMergeCompleteBuild() throws IOException {
+        assertEquals(List.of(), ShardManifest.merge(this.target, SHARDS, this.allPages));
+        assertEquals(this.allPages, new HashSet<>(Files.readAllLines(
+                new File(this.target, ShardManifest.MERGED_MANIFEST).toPath(), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testMergeMissingShard() throws IOException {
+        File manifest = ShardManifest.getManifestFile(this.target, new WebGenArgs.Shard(1, SHARDS));
+        List<String> pages = Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+        Files.delete(manifest.toPath());
+        List<String> problems = ShardManifest.merge(this.target, SHARDS, this.allPages);
+        assertEquals(1 + pages.size(), problems.size());
+        assertTrue(problems.get(0), problems.get(0).startsWith("Missing manifest of shard 1/3"));
+        assertFalse(new File(this.target, ShardManifest.MERGED_MANIFEST).exists());
+    }
+
+    @Test
+    public void testMergeOverlappingAndUnknownPages() throws IOException {
+        File manifest = ShardManifest.getManifestFile(this.target, new WebGenArgs.Shard(0, SHARDS));
+        String otherPage = this.allPages.stream().filter(p -> !new WebGenArgs.Shard(0, SHARDS).contains(p))
+                .findFirst().orElseThrow();
+        Files.writeString(manifest.toPath(), otherPage + "\n/removed/\n", StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+        int owner = Math.floorMod(otherPage.hashCode(), SHARDS);
+        List<String> problems = ShardManifest.merge(this.target, SHARDS, this.allPages);
+        assertEquals(Set.of("Page /removed/ of shard 0 is not part of the site",
+                "Page %s rendered by shards 0 and %d".formatted(otherPage, owner)), Set.copyOf(problems));
+    }
+
+    @Test
+    public void testParseShard() throws ParseException {
+        assertEquals(new WebGenArgs.Shard(1, 3), new WebGenArgs(new String[]{"--shard", "1/3"}).getShard());
+        for (String invalid : List.of("3/3", "-1/3", "1", "a/3", "1/0"))
+            try {
+                new WebGenArgs(new String[]{"--shard", invalid});
+                fail(invalid);
+            } catch (ParseException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid"));
+            }
+    }
+
+    private static Project loadProject() throws IOException, ProjectFormatException {
+        WebGen.resetIds();
+        return new ProjectParser(false, true).loadProject(new File("testProject"));
+    }
+
+    private Renderer createRenderer(WebGenArgs.Shard shard) {
+        return new Renderer(new FileSystemSink(this.target), WebGenArgs.ArticleSorting.PUBLISHED_LAST, true, false,
+                shard, false, null, false, false, null, 0, false, new TemplateEngine());
+    }
+}
@@ -0,0 +1,150 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.output.FileSystemSink;
+import edu.cmu.webgen.output.InMemorySink;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SitemapWriterTest {
+
+    private static final String NAMESPACE = "http://www.sitemaps.org/schemas/sitemap/0.9";
+    private static final LocalDateTime DATE = LocalDateTime.of(2021, 3, 4, 5, 6, 7);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUrlset() throws Exception {
+        InMemorySink sink = new InMemorySink();
+        SitemapWriter sitemap = new SitemapWriter(sink, "https://example.org/", null);
+        sitemap.write(List.of("/", "/p/a/", "/search?q=a&b"), Map.of("/p/a/", DATE));
+
+        Element urlset = parse(sink.get(SitemapWriter.SITEMAP));
+        assertEquals(NAMESPACE, urlset.getNamespaceURI());
+        assertEquals("urlset", urlset.getLocalName());
+        NodeList urls = urlset.getElementsByTagNameNS(NAMESPACE, "url");
+        assertEquals(3, urls.getLength());
+        assertEquals("https://example.org/", text((Element) urls.item(0), "loc"));
+        // pages without content have no last modification
+        assertEquals(0, ((Element) urls.item(0)).getElementsByTagNameNS(NAMESPACE, "lastmod").getLength());
+        assertEquals("https://example.org/p/a/", text((Element) urls.item(1), "loc"));
+        assertEquals(DATE, OffsetDateTime.parse(text((Element) urls.item(1), "lastmod")).toLocalDateTime());
+        // the ampersand is escaped in the file and restored by the parser
+        assertEquals("https://example.org/search?q=a&b", text((Element) urls.item(2), "loc"));
+        assertTrue(new String(sink.get(SitemapWriter.SITEMAP)).contains("q=a&amp;b"));
+
+        assertEquals(1, sitemap.getFilesWritten());
+        assertEquals(0, sitemap.getFilesUnchanged());
+        assertEquals("", new String(sink.get(SitemapWriter.MANIFEST)).replaceAll("sitemap.xml=[0-9a-f]{64}\n", ""));
+    }
+
+    @Test
+    public void testSplitIntoIndex() throws Exception {
+        InMemorySink sink = new InMemorySink();
+        List<String> pages = pages(SitemapWriter.MAX_URLS * 2 + 1);
+        SitemapWriter sitemap = new SitemapWriter(sink, "https://example.org", null);
+        sitemap.write(pages, Map.of("/p/" + SitemapWriter.MAX_URLS + "/", DATE));
+
+        Element index = parse(sink.get(SitemapWriter.SITEMAP));
+        assertEquals("sitemapindex", index.getLocalName());
+        NodeList sitemaps = index.getElementsByTagNameNS(NAMESPACE, "sitemap");
+        assertEquals(3, sitemaps.getLength());
+        for (int idx = 0; idx < 3; idx++)
+            assertEquals("https://example.org/sitemap-" + (idx + 1) + ".xml", text((Element) sitemaps.item(idx), "loc"));
+        // the index lists the newest update of each file, the first file has none
+        assertEquals(0, ((Element) sitemaps.item(0)).getElementsByTagNameNS(NAMESPACE, "lastmod").getLength());
+        assertEquals(DATE, OffsetDateTime.parse(text((Element) sitemaps.item(1), "lastmod")).toLocalDateTime());
+
+        assertEquals(SitemapWriter.MAX_URLS, count(sink.get("sitemap-1.xml")));
+        assertEquals(SitemapWriter.MAX_URLS, count(sink.get("sitemap-2.xml")));
+        assertEquals(1, count(sink.get("sitemap-3.xml")));
+        Element last = parse(sink.get("sitemap-3.xml"));
+        assertEquals("https://example.org/p/" + (SitemapWriter.MAX_URLS * 2) + "/",
+                text((Element) last.getElementsByTagNameNS(NAMESPACE, "url").item(0), "loc"));
+        assertEquals(4, sitemap.getFilesWritten());
+    }
+
+    @Test
+    public void testUnchangedFilesAreNotWritten() throws Exception {
+        File site = this.folder.newFolder("site");
+        List<String> pages = pages(SitemapWriter.MAX_URLS * 2 + 1);
+        new SitemapWriter(new FileSystemSink(site), "https://example.org", site).write(pages, Map.of());
+        assertTrue(new File(site, "sitemap-3.xml").isFile());
+
+        // only the file with the changed entry and the index, which refers to its date, are written again
+        SitemapWriter sitemap = new SitemapWriter(new FileSystemSink(site), "https://example.org", site);
+        sitemap.write(pages, Map.of("/p/1/", DATE));
+        assertEquals(2, sitemap.getFilesWritten());
+        assertEquals(2, sitemap.getFilesUnchanged());
+
+        sitemap = new SitemapWriter(new FileSystemSink(site), "https://example.org", site);
+        sitemap.write(pages, Map.of("/p/1/", DATE));
+        assertEquals(0, sitemap.getFilesWritten());
+        assertEquals(4, sitemap.getFilesUnchanged());
+    }
+
+    @Test
+    public void testStaleFilesAreDeleted() throws Exception {
+        File site = this.folder.newFolder("site");
+        new SitemapWriter(new FileSystemSink(site), "https://example.org", site)
+                .write(pages(SitemapWriter.MAX_URLS * 2 + 1), Map.of());
+        Files.writeString(new File(site, "notes.txt").toPath(), "keep");
+        // a manifest cannot delete files the writer did not create
+        Files.writeString(new File(site, SitemapWriter.MANIFEST).toPath(),
+                Files.readString(new File(site, SitemapWriter.MANIFEST).toPath()) + "notes.txt=0\n");
+
+        SitemapWriter sitemap = new SitemapWriter(new FileSystemSink(site), "https://example.org", site);
+        sitemap.write(pages(SitemapWriter.MAX_URLS + 1), Map.of());
+        assertTrue(new File(site, "sitemap-1.xml").isFile());
+        assertTrue(new File(site, "sitemap-2.xml").isFile());
+        assertFalse(new File(site, "sitemap-3.xml").exists());
+        assertTrue(new File(site, "notes.txt").exists());
+        assertEquals(2, parse(Files.readAllBytes(new File(site, SitemapWriter.SITEMAP).toPath()))
+                .getElementsByTagNameNS(NAMESPACE, "sitemap").getLength());
+
+        // a small site has no index and no numbered files
+        new SitemapWriter(new FileSystemSink(site), "https://example.org", site).write(pages(3), Map.of());
+        assertFalse(new File(site, "sitemap-1.xml").exists());
+        assertFalse(new File(site, "sitemap-2.xml").exists());
+        assertEquals(3, count(Files.readAllBytes(new File(site, SitemapWriter.SITEMAP).toPath())));
+    }
+
+    private static List<String> pages(int count) {
+        List<String> pages = new ArrayList<>(count);
+        for (int idx = 0; idx < count; idx++)
+            pages.add("/p/" + idx + "/");
+        return pages;
+    }
+
+    private static int count(byte[] xml) throws Exception {
+        return parse(xml).getElementsByTagNameNS(NAMESPACE, "url").getLength();
+    }
+
+    private static Element parse(byte[] xml) throws Exception {
+        assertNotNull(xml);
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml)).getDocumentElement();
+    }
+
+    private static String text(Element parent, String name) {
+        NodeList elements = parent.getElementsByTagNameNS(NAMESPACE, name);
+        assertEquals(name, 1, elements.getLength());
+        return elements.item(0).getTextContent();
+    }
+}
@@ -0,0 +1,45 @@
+package edu.cmu.webgen.rendering;
+
+import edu.cmu.webgen.output.InMemorySink;
+import edu.cmu.webgen.rendering.data.ContentFragment;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TemplateEngineTest {
+
+    @Test
+    public void testRenderImageFragment() throws IOException {
+        TemplateEngine engine = new TemplateEngine();
+        ContentFragment image = new ContentFragment(null, w -> engine.render("content-fragment-image",
+                Map.of("address", "media/a.jpg", "relPath", "../../",
+                        "srcset", List.of(Map.of("address", "media/a-480w.jpg", "width", 480)),
+                        "title", "A & B"), w));
+        InMemorySink sink = new InMemorySink();
+        // fragments of a page are rendered inside an each block of the page template
+        engine.render("article.html", Map.of("content", List.of(image)), null, sink, "p/a/index.html");
+        String html = new String(sink.get("p/a/index.html"), StandardCharsets.UTF_8);
+        assertTrue(html, html.contains("<img src=\"../../media/a.jpg\" srcset=\"../../media/a-480w.jpg 480w\""
+                + " sizes=\"100vw\" alt=\"A &amp; B\" />"));
+    }
+
+    @Test
+    public void testWriteStrings() throws IOException {
+        // handlebars' buffers fail on append(CharSequence, int, int) with an end index of 0
+        TemplateEngine engine = new TemplateEngine();
+        ContentFragment part = new ContentFragment(null, w -> {
+            w.write("");
+            w.write("xx<p>part</p>xx", 2, 11);
+        });
+        InMemorySink sink = new InMemorySink();
+        engine.render("article.html", Map.of("content", List.of(part)), null, sink, "index.html");
+        String html = new String(sink.get("index.html"), StandardCharsets.UTF_8);
+        assertTrue(html, html.contains("<p>part</p>"));
+        assertFalse(html, html.contains("xx"));
+    }
+}
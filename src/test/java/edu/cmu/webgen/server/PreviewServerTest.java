@@ -0,0 +1,146 @@
+package edu.cmu.webgen.server;
+
+import edu.cmu.webgen.WebGenArgs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class PreviewServerTest {
+
+    private static final String ARTICLE = "/p/fluggleburgh_2017/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private PreviewServer server;
+    private File project;
+    private int port;
+
+    @Before
+    public void startServer() throws Exception {
+        // a copy, so that the project can be changed while it is served
+        this.project = this.folder.newFolder("project");
+        copy(new File("testProject").toPath(), this.project.toPath());
+        this.server = new PreviewServer(new WebGenArgs(new String[]{"-d", this.project.getPath(), "--serve",
+                "--reproducible", "--site-url", "https://example.org",
+                "--cache-dir", this.folder.newFolder("cache").getPath()}));
+        this.port = this.server.start(0);
+    }
+
+    @After
+    public void stopServer() {
+        this.server.stop();
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        HttpResponse<String> home = get("/");
+        assertEquals(200, home.statusCode());
+        assertEquals("text/html; charset=UTF-8", home.headers().firstValue("Content-Type").orElse(null));
+        assertEquals("no-cache", home.headers().firstValue("Cache-Control").orElse(null));
+        assertTrue(home.body().contains("FluggleBurgh 2017"));
+        assertEquals(home.body(), get("/index.html").body());
+
+        HttpResponse<String> article = get(ARTICLE);
+        assertEquals(200, article.statusCode());
+        assertTrue(article.body().contains("Wilkinsburg"));
+        // rendered once, then served from the cache
+        assertEquals(article.body(), get(ARTICLE).body());
+    }
+
+    @Test
+    public void testAssets() throws Exception {
+        HttpResponse<String> css = get("/css/main.css");
+        assertEquals(200, css.statusCode());
+        assertEquals("text/css; charset=UTF-8", css.headers().firstValue("Content-Type").orElse(null));
+
+        HttpResponse<String> sitemap = get("/sitemap.xml");
+        assertEquals(200, sitemap.statusCode());
+        assertTrue(sitemap.body().contains("<loc>https://example.org" + ARTICLE + "</loc>"));
+
+        // media are served from their source files
+        Matcher image = Pattern.compile("media/[^\"]+\\.jpg").matcher(get("/p/fluggleburgh_2019/").body());
+        assertTrue(image.find());
+        HttpResponse<byte[]> media = this.client.send(request("/" + image.group()).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, media.statusCode());
+        assertEquals("image/jpeg", media.headers().firstValue("Content-Type").orElse(null));
+        assertTrue(media.body().length > 0);
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        HttpResponse<String> missing = get("/p/missing/");
+        assertEquals(404, missing.statusCode());
+        assertEquals("Not found: /p/missing/index.html", missing.body());
+        assertEquals(404, get("/missing.css").statusCode());
+        assertEquals(405, send(request("/").POST(HttpRequest.BodyPublishers.noBody())).statusCode());
+    }
+
+    @Test
+    public void testHead() throws Exception {
+        HttpResponse<String> head = send(request(ARTICLE).method("HEAD", HttpRequest.BodyPublishers.noBody()));
+        assertEquals(200, head.statusCode());
+        assertEquals("", head.body());
+        assertEquals(200, send(request("/css/main.css").method("HEAD", HttpRequest.BodyPublishers.noBody()))
+                .statusCode());
+    }
+
+    @Test
+    public void testReloadOnChange() throws Exception {
+        assertFalse(get(ARTICLE).body().contains("Added while serving"));
+        Files.writeString(new File(this.project, "2017_fluggleburgh/FluggleBurgh2017.md").toPath(),
+                "\nAdded while serving\n", StandardOpenOption.APPEND);
+        // the project is loaded again on its own thread, the cached page is dropped
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!get(ARTICLE).body().contains("Added while serving")) {
+            assertTrue("Project not reloaded", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + this.port + path));
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return send(request(path));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return this.client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(source)) {
+            paths = walk.toList();
+        }
+        for (Path path : paths) {
+            Path copy = target.resolve(source.relativize(path).toString());
+            if (Files.isDirectory(path))
+                Files.createDirectories(copy);
+            else
+                Files.copy(path, copy);
+        }
+    }
+}
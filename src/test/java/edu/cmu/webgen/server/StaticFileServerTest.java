@@ -0,0 +1,201 @@
+package edu.cmu.webgen.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class StaticFileServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StaticFileServer server;
+    private int port;
+
+    @Before
+    public void startServer() throws IOException {
+        File root = this.folder.getRoot();
+        write(new File(root, "index.html"), "<h1>Home</h1>");
+        write(new File(root, ".webgen-sitemap.manifest"), "sitemap.xml=0");
+        write(new File(root, ".cache/p/index.html"), "hidden");
+        write(new File(root, "p/a/index.html"), "<h1>A</h1>");
+        write(new File(root, "css/main.css"), "body { color: black }");
+        this.server = new StaticFileServer(root);
+        this.port = this.server.start(0);
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        this.server.stop();
+    }
+
+    @Test
+    public void testMethodNotAllowed() throws IOException {
+        String response = request("POST / HTTP/1.1\r\nHost: localhost\r\nContent-Length: 0\r\n\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 405 "));
+        assertTrue(response, response.contains("\r\nAllow: GET, HEAD\r\n"));
+    }
+
+    @Test
+    public void testHiddenFilesAreNotServed() throws IOException {
+        assertTrue(request(get("/index.html")).startsWith("HTTP/1.1 200 "));
+        assertTrue(request(get("/.webgen-sitemap.manifest")).startsWith("HTTP/1.1 404 "));
+        assertTrue(request(get("/.cache/p/")).startsWith("HTTP/1.1 404 "));
+        assertTrue(request(get("/p/../.cache/p/index.html")).startsWith("HTTP/1.1 404 "));
+        assertTrue(request(get("/%2Ewebgen-sitemap.manifest")).startsWith("HTTP/1.1 404 "));
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        String response = request(get("/"));
+        assertTrue(response, response.startsWith("HTTP/1.1 200 "));
+        assertEquals("text/html; charset=UTF-8", header(response, "Content-Type"));
+        assertEquals("13", header(response, "Content-Length"));
+        assertEquals("close", header(response, "Connection"));
+        assertTrue(header(response, "ETag").matches("\"[0-9a-f]+\""));
+        assertEquals("<h1>Home</h1>", body(response));
+        assertEquals("<h1>A</h1>", body(request(get("/p/a/"))));
+        assertEquals("body { color: black }", body(request(get("/css/main.css?v=2"))));
+        assertTrue(request(get("/p/b/")).startsWith("HTTP/1.1 404 "));
+    }
+
+    @Test
+    public void testNotModified() throws IOException {
+        String etag = header(request(get("/css/main.css")), "ETag");
+        String response = request(get("/css/main.css", "If-None-Match: " + etag));
+        assertTrue(response, response.startsWith("HTTP/1.1 304 "));
+        assertEquals(etag, header(response, "ETag"));
+        assertNull(header(response, "Content-Length"));
+        assertEquals("", body(response));
+        // weak comparison and any of several tags
+        assertTrue(request(get("/css/main.css", "If-None-Match: \"x\", W/" + etag)).startsWith("HTTP/1.1 304 "));
+        assertTrue(request(get("/css/main.css", "If-None-Match: *")).startsWith("HTTP/1.1 304 "));
+        assertTrue(request(get("/css/main.css", "If-None-Match: \"x\"")).startsWith("HTTP/1.1 200 "));
+        // the tag belongs to the content
+        assertNotEquals(etag, header(request(get("/")), "ETag"));
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        File css = new File(this.folder.getRoot(), "css/main.css.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(css.toPath()))) {
+            out.write("body { color: black }".getBytes(StandardCharsets.UTF_8));
+        }
+        String response = request(get("/css/main.css", "Accept-Encoding: deflate, gzip"));
+        assertTrue(response, response.startsWith("HTTP/1.1 200 "));
+        assertEquals("gzip", header(response, "Content-Encoding"));
+        assertEquals("Accept-Encoding", header(response, "Vary"));
+        assertEquals("text/css; charset=UTF-8", header(response, "Content-Type"));
+        assertEquals(String.valueOf(css.length()), header(response, "Content-Length"));
+        String etag = header(response, "ETag");
+
+        // clients that do not accept gzip get the file itself, which differs by tag
+        for (String acceptEncoding : new String[]{null, "Accept-Encoding: gzip;q=0", "Accept-Encoding: br"}) {
+            response = request(acceptEncoding == null ? get("/css/main.css") : get("/css/main.css", acceptEncoding));
+            assertNull(header(response, "Content-Encoding"));
+            assertEquals("Accept-Encoding", header(response, "Vary"));
+            assertEquals("body { color: black }", body(response));
+            assertNotEquals(etag, header(response, "ETag"));
+        }
+        // files without compressed sibling do not vary
+        assertNull(header(request(get("/", "Accept-Encoding: gzip")), "Vary"));
+    }
+
+    @Test
+    public void testDirectoryRedirect() throws IOException {
+        String response = request(get("/p/a"));
+        assertTrue(response, response.startsWith("HTTP/1.1 301 "));
+        assertEquals("/p/a/", header(response, "Location"));
+        assertEquals("/p/a/?page=2", header(request(get("/p/a?page=2")), "Location"));
+    }
+
+    @Test
+    public void testBadRequest() throws IOException {
+        assertTrue(request(get("/%zz")).startsWith("HTTP/1.1 400 "));
+        assertTrue(request(get("/a%00b")).startsWith("HTTP/1.1 400 "));
+        assertTrue(request(get("/../../etc/passwd")).startsWith("HTTP/1.1 400 "));
+        assertTrue(request(get("/p/%2E%2E/%2E%2E/x")).startsWith("HTTP/1.1 400 "));
+        assertTrue(request(get("index.html")).startsWith("HTTP/1.1 400 "));
+        assertTrue(request("GET /\r\n\r\n").startsWith("HTTP/1.1 400 "));
+    }
+
+    @Test
+    public void testHead() throws IOException {
+        String response = request("HEAD / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 200 "));
+        assertEquals("13", header(response, "Content-Length"));
+        assertEquals("", body(response));
+    }
+
+    @Test
+    public void testKeepAlive() throws IOException {
+        // pipelined requests on one connection, the last one closes it
+        String response = request("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET /p/a HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET /css/main.css HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+        String[] responses = response.split("(?=HTTP/1\\.1 )");
+        assertEquals(3, responses.length);
+        assertTrue(responses[0].startsWith("HTTP/1.1 200 "));
+        assertEquals("keep-alive", header(responses[0], "Connection"));
+        assertEquals("<h1>Home</h1>", body(responses[0]));
+        assertTrue(responses[1].startsWith("HTTP/1.1 301 "));
+        assertEquals("body { color: black }", body(responses[2]));
+        assertEquals("close", header(responses[2], "Connection"));
+
+        // HTTP/1.0 closes by default
+        response = request("GET / HTTP/1.0\r\n\r\nGET / HTTP/1.0\r\n\r\n");
+        assertEquals("close", header(response, "Connection"));
+        assertEquals("<h1>Home</h1>", body(response));
+    }
+
+    static String get(String target, String... headers) {
+        StringBuilder request = new StringBuilder("GET " + target + " HTTP/1.1\r\nHost: localhost\r\n");
+        for (String header : headers)
+            request.append(header).append("\r\n");
+        return request.append("Connection: close\r\n\r\n").toString();
+    }
+
+    /**
+     * value of a header of a response, null if it is missing
+     */
+    static String header(String response, String name) {
+        for (String line : response.substring(0, response.indexOf("\r\n\r\n")).split("\r\n"))
+            if (line.regionMatches(true, 0, name + ":", 0, name.length() + 1))
+                return line.substring(name.length() + 1).trim();
+        return null;
+    }
+
+    static String body(String response) {
+        return response.substring(response.indexOf("\r\n\r\n") + 4);
+    }
+
+    /**
+     * send a request on a new connection and read until the server closes it
+     */
+    String request(String request) throws IOException {
+        try (Socket socket = new Socket("localhost", this.port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+            InputStream in = socket.getInputStream();
+            return new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+    }
+}